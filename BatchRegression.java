@@ -0,0 +1,263 @@
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Fits y = m*x + b independently to many series at once, e.g. one line per
+ * sensor. The series are packed end to end in shared primitive columns and
+ * described by an offsets array: series s is points [offsets[s],
+ * offsets[s + 1]). Results come back as primitive arrays indexed by series.
+ *
+ * Each fit is a closed-form two-pass computation (means, then centered sums)
+ * straight over the shared columns, so a fit needs no scratch space at all
+ * and allocates nothing. Runs of series are handed out to the work-stealing
+ * common pool, split by point count so a few huge series cannot starve the
+ * other workers.
+ */
+public class BatchRegression {
+
+	// points below which a run of series is fitted on the current thread
+	private static final int SEQUENTIAL_POINTS = 1 << 15;
+
+	/**
+	 * Fitted lines, one entry per series. Series with fewer than two distinct
+	 * x values get NaN slope and intercept.
+	 */
+	public static class Result {
+		private final double[] slopes;
+		private final double[] intercepts;
+		private final double[] chiSquared;
+		private final int[] counts;
+		private final double[] keys;
+
+		Result(int series, double[] keys) {
+			slopes = new double[series];
+			intercepts = new double[series];
+			chiSquared = new double[series];
+			counts = new int[series];
+			this.keys = keys;
+		}
+
+		/**
+		 * Returns the number of series
+		 */
+		public int size() {
+			return slopes.length;
+		}
+
+		public double[] slopes() {
+			return slopes;
+		}
+
+		public double[] intercepts() {
+			return intercepts;
+		}
+
+		/**
+		 * Sum of squared residuals of each series about its line
+		 */
+		public double[] chiSquared() {
+			return chiSquared;
+		}
+
+		/**
+		 * Number of points in each series
+		 */
+		public int[] counts() {
+			return counts;
+		}
+
+		/**
+		 * Key of each series when read from a grouped file, otherwise null
+		 */
+		public double[] keys() {
+			return keys;
+		}
+	}
+
+	/**
+	 * Fits every series of packed columns
+	 *
+	 * @param offsets - series s is points [offsets[s], offsets[s + 1]), so
+	 *            there is one more offset than there are series
+	 */
+	public static Result fit(double[] xs, double[] ys, int[] offsets) {
+		return fit(xs, ys, offsets, null);
+	}
+
+	private static Result fit(double[] xs, double[] ys, int[] offsets, double[] keys) {
+		Result result = new Result(offsets.length - 1, keys);
+		FitTask task = new FitTask(xs, ys, offsets, result, 0, result.size());
+		if (offsets[offsets.length - 1] - offsets[0] <= SEQUENTIAL_POINTS) {
+			task.compute();
+		} else {
+			ForkJoinPool.commonPool().invoke(task);
+		}
+		return result;
+	}
+
+	/**
+	 * Reads a file of key, x, y rows and fits one line per distinct key. Rows
+	 * with the same key need not be adjacent; series come back in the order
+	 * their keys first appear.
+	 */
+	public static Result fitGroupedFile(String fileName) throws IOException {
+		DataSet points = new DataSet();
+		int[] groups = new int[1024];
+		Map<Double, Integer> groupOfKey = new HashMap<>();
+		double[] keys = new double[64];
+
+		try (MappedDataReader reader = new MappedDataReader(fileName)) {
+			double lastKey = Double.NaN;
+			int lastGroup = -1;
+			while (reader.next()) {
+				if (reader.fieldCount() != 3) {
+					System.out.println("Error: Expected key, x, y on line " + reader.lineNumber());
+					continue;
+				}
+				double key = reader.field(0);
+				// rows usually arrive grouped, so only look up keys on a change
+				if (lastGroup < 0 || Double.compare(key, lastKey) != 0) {
+					Integer group = groupOfKey.get(key);
+					if (group == null) {
+						group = groupOfKey.size();
+						groupOfKey.put(key, group);
+						if (group == keys.length) {
+							keys = grow(keys);
+						}
+						keys[group] = key;
+					}
+					lastKey = key;
+					lastGroup = group;
+				}
+
+				int at = points.size();
+				if (at == groups.length) {
+					int[] grown = new int[groups.length * 2];
+					System.arraycopy(groups, 0, grown, 0, at);
+					groups = grown;
+				}
+				groups[at] = lastGroup;
+				points.add(reader.field(1), reader.field(2));
+			}
+		}
+
+		// counting sort of the points into contiguous series
+		int series = groupOfKey.size();
+		int count = points.size();
+		int[] offsets = new int[series + 1];
+		for (int i = 0; i < count; i++) {
+			offsets[groups[i] + 1]++;
+		}
+		for (int s = 0; s < series; s++) {
+			offsets[s + 1] += offsets[s];
+		}
+		int[] next = new int[series];
+		System.arraycopy(offsets, 0, next, 0, series);
+		double[] xs = new double[count];
+		double[] ys = new double[count];
+		for (int i = 0; i < count; i++) {
+			int at = next[groups[i]]++;
+			xs[at] = points.x(i);
+			ys[at] = points.y(i);
+		}
+
+		double[] seriesKeys = new double[series];
+		System.arraycopy(keys, 0, seriesKeys, 0, series);
+		return fit(xs, ys, offsets, seriesKeys);
+	}
+
+	private static double[] grow(double[] array) {
+		double[] grown = new double[array.length * 2];
+		System.arraycopy(array, 0, grown, 0, array.length);
+		return grown;
+	}
+
+	/**
+	 * Fits series [first, last) of the result
+	 */
+	private static class FitTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final double[] xs;
+		private final double[] ys;
+		private final int[] offsets;
+		private final Result result;
+		private final int first;
+		private final int last;
+
+		FitTask(double[] xs, double[] ys, int[] offsets, Result result, int first, int last) {
+			this.xs = xs;
+			this.ys = ys;
+			this.offsets = offsets;
+			this.result = result;
+			this.first = first;
+			this.last = last;
+		}
+
+		@Override
+		protected void compute() {
+			int points = offsets[last] - offsets[first];
+			if (last - first > 1 && points > SEQUENTIAL_POINTS) {
+				// split where half of the points fall, not half of the series
+				int target = offsets[first] + points / 2;
+				int middle = first + 1;
+				while (middle < last - 1 && offsets[middle + 1] <= target) {
+					middle++;
+				}
+				invokeAll(new FitTask(xs, ys, offsets, result, first, middle),
+						new FitTask(xs, ys, offsets, result, middle, last));
+				return;
+			}
+			for (int s = first; s < last; s++) {
+				fitSeries(s);
+			}
+		}
+
+		private void fitSeries(int s) {
+			int from = offsets[s];
+			int to = offsets[s + 1];
+			int n = to - from;
+			result.counts[s] = n;
+			if (n == 0) {
+				result.slopes[s] = Double.NaN;
+				result.intercepts[s] = Double.NaN;
+				return;
+			}
+
+			double meanX = 0;
+			double meanY = 0;
+			for (int i = from; i < to; i++) {
+				meanX += xs[i];
+				meanY += ys[i];
+			}
+			meanX /= n;
+			meanY /= n;
+
+			double sxx = 0;
+			double sxy = 0;
+			double syy = 0;
+			for (int i = from; i < to; i++) {
+				double dx = xs[i] - meanX;
+				double dy = ys[i] - meanY;
+				sxx += dx * dx;
+				sxy += dx * dy;
+				syy += dy * dy;
+			}
+
+			if (sxx == 0) {
+				result.slopes[s] = Double.NaN;
+				result.intercepts[s] = Double.NaN;
+				result.chiSquared[s] = syy;
+				return;
+			}
+			double slope = sxy / sxx;
+			result.slopes[s] = slope;
+			result.intercepts[s] = meanY - slope * meanX;
+			result.chiSquared[s] = Math.max(0, syy - slope * sxy);
+		}
+	}
+}
@@ -0,0 +1,264 @@
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Cholesky factorization A = L L^T of a symmetric positive-definite matrix,
+ * such as the normal matrix A^T A. Only the lower triangle is read and only
+ * L is stored, packed row by row, so the factor takes n(n+1)/2 doubles and
+ * about n^3/6 multiply-adds - a third of the work of LU.
+ *
+ * Factor once, then solve against as many right sides as needed. The buffers
+ * can be refilled with factor() to reuse them across fits of the same size.
+ */
+public class CholeskySolver {
+
+	// rows of the factor computed together, so each earlier row is read
+	// from memory once per block instead of once per row
+	private static final int BLOCK = 32;
+
+	private final int size;
+	// L(i, j), j <= i, lives at factor[i * (i + 1) / 2 + j]
+	private final double[] factor;
+	private boolean positiveDefinite;
+	// 1-norm of the factored matrix, for condition estimates
+	private double norm1;
+
+	/**
+	 * Constructor - allocates buffers for an n x n system, call factor before
+	 * solving
+	 */
+	public CholeskySolver(int size) {
+		this.size = size;
+		this.factor = new double[size * (size + 1) / 2];
+	}
+
+	/**
+	 * Copy constructor
+	 */
+	public CholeskySolver(CholeskySolver other) {
+		this.size = other.size;
+		this.factor = other.factor.clone();
+		this.positiveDefinite = other.positiveDefinite;
+		this.norm1 = other.norm1;
+	}
+
+	/**
+	 * Constructor - factors a symmetric positive-definite matrix
+	 */
+	public CholeskySolver(Matrix a) {
+		this(a.rows());
+		factor(a);
+	}
+
+	/**
+	 * Factors the lower triangle of a square matrix, reusing this object's
+	 * buffers
+	 *
+	 * @return false if the matrix is not positive definite
+	 */
+	public boolean factor(Matrix a) {
+		if (a.rows() != size || a.columns() != size) {
+			throw new IllegalArgumentException("Expected a " + size + "x" + size + " matrix");
+		}
+		for (int i = 0; i < size; i++) {
+			int row = i * (i + 1) / 2;
+			for (int j = 0; j <= i; j++) {
+				factor[row + j] = a.get(i, j);
+			}
+		}
+		return decompose();
+	}
+
+	/**
+	 * Factors X^T X of a set of normal equations, reusing this object's
+	 * buffers
+	 *
+	 * @return false if the matrix is not positive definite
+	 */
+	public boolean factor(NormalEquations normal) {
+		if (normal.size() != size) {
+			throw new IllegalArgumentException("Expected " + size + " features, found " + normal.size());
+		}
+		for (int i = 0; i < size; i++) {
+			int row = i * (i + 1) / 2;
+			for (int j = 0; j <= i; j++) {
+				factor[row + j] = normal.gram(i, j);
+			}
+		}
+		return decompose();
+	}
+
+	/**
+	 * Row-oriented Cholesky-Crout on the packed lower triangle. Every inner
+	 * product runs along two contiguous packed rows.
+	 */
+	private boolean decompose() {
+		int n = size;
+		computeNorm();
+		positiveDefinite = true;
+
+		for (int blockStart = 0; blockStart < n; blockStart += BLOCK) {
+			int blockEnd = Math.min(blockStart + BLOCK, n);
+			for (int j = 0; j < blockEnd; j++) {
+				int rowJ = j * (j + 1) / 2;
+				for (int i = Math.max(j, blockStart); i < blockEnd; i++) {
+					int rowI = i * (i + 1) / 2;
+					double sum = factor[rowI + j];
+					for (int k = 0; k < j; k++) {
+						sum -= factor[rowI + k] * factor[rowJ + k];
+					}
+					if (i == j) {
+						if (!(sum > 0)) {
+							positiveDefinite = false;
+							return false;
+						}
+						factor[rowI + j] = Math.sqrt(sum);
+					} else {
+						factor[rowI + j] = sum / factor[rowJ + j];
+					}
+				}
+			}
+		}
+		return true;
+	}
+
+	private void computeNorm() {
+		double[] columns = new double[size];
+		for (int i = 0; i < size; i++) {
+			int row = i * (i + 1) / 2;
+			for (int j = 0; j < i; j++) {
+				double value = Math.abs(factor[row + j]);
+				columns[i] += value;
+				columns[j] += value;
+			}
+			columns[i] += Math.abs(factor[row + i]);
+		}
+		norm1 = 0;
+		for (double column : columns) {
+			norm1 = Math.max(norm1, column);
+		}
+	}
+
+	/**
+	 * Writes the factor so readFrom can restore it without refactoring
+	 */
+	public void writeTo(DataOutput out) throws IOException {
+		out.writeInt(size);
+		out.writeBoolean(positiveDefinite);
+		out.writeDouble(norm1);
+		for (double value : factor) {
+			out.writeDouble(value);
+		}
+	}
+
+	/**
+	 * Reads a factor written by writeTo
+	 */
+	public static CholeskySolver readFrom(DataInput in) throws IOException {
+		CholeskySolver response = new CholeskySolver(in.readInt());
+		response.positiveDefinite = in.readBoolean();
+		response.norm1 = in.readDouble();
+		for (int i = 0; i < response.factor.length; i++) {
+			response.factor[i] = in.readDouble();
+		}
+		return response;
+	}
+
+	/**
+	 * Returns the dimension of the factored matrix
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns false if the last factored matrix was not positive definite
+	 */
+	public boolean isPositiveDefinite() {
+		return positiveDefinite;
+	}
+
+	/**
+	 * Returns the natural log of the determinant of the factored matrix
+	 */
+	public double logDeterminant() {
+		double sum = 0;
+		for (int i = 0; i < size; i++) {
+			sum += Math.log(factor[i * (i + 1) / 2 + i]);
+		}
+		return 2 * sum;
+	}
+
+	/**
+	 * Estimates the 1-norm condition number of the factored matrix. Infinite
+	 * if it is not positive definite.
+	 */
+	public double conditionEstimate() {
+		if (!positiveDefinite) {
+			return Double.POSITIVE_INFINITY;
+		}
+		// symmetric, so solving with the transpose is the same solve
+		return norm1 * ConditionEstimator.inverseNorm1(size, (x, transpose) -> solveInPlace(x));
+	}
+
+	/**
+	 * Solves Ax=b for every column of the right side against the one
+	 * factorization
+	 *
+	 * @return the solution, or null if the matrix is not positive definite
+	 */
+	public Matrix solve(Matrix rightSide) {
+		if (rightSide.rows() != size) {
+			throw new IllegalArgumentException("Right side has " + rightSide.rows() + " rows, expected " + size);
+		}
+		if (!positiveDefinite) {
+			return null;
+		}
+		Matrix response = new Matrix(size, rightSide.columns());
+		double[] column = new double[size];
+		for (int c = 0; c < rightSide.columns(); c++) {
+			for (int i = 0; i < size; i++) {
+				column[i] = rightSide.get(i, c);
+			}
+			solveInPlace(column);
+			for (int i = 0; i < size; i++) {
+				response.set(column[i], i, c);
+			}
+		}
+		return response;
+	}
+
+	/**
+	 * Solves Ax=b, overwriting b with x. Allocates nothing.
+	 *
+	 * @return false if the matrix is not positive definite (b is untouched)
+	 */
+	public boolean solveInPlace(double[] b) {
+		if (!positiveDefinite) {
+			return false;
+		}
+		int n = size;
+
+		// L y = b, along the packed rows
+		for (int i = 0; i < n; i++) {
+			int row = i * (i + 1) / 2;
+			double value = b[i];
+			for (int k = 0; k < i; k++) {
+				value -= factor[row + k] * b[k];
+			}
+			b[i] = value / factor[row + i];
+		}
+
+		// L^T x = y, scattering each solved entry up its column
+		for (int i = n - 1; i >= 0; i--) {
+			int row = i * (i + 1) / 2;
+			double value = b[i] / factor[row + i];
+			b[i] = value;
+			for (int k = 0; k < i; k++) {
+				b[k] -= factor[row + k] * value;
+			}
+		}
+		return true;
+	}
+}
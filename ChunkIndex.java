@@ -0,0 +1,345 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Side index over a text data file of x, y or x, y, sigma rows, holding the regression
+ * statistics of each block of rows together with where the block starts in
+ * the file. A fit over a range of rows, or of x values, merges the stored
+ * statistics of every block wholly inside the range and rereads only the
+ * blocks the range cuts through.
+ *
+ * Rows are counted over valid points only; lines the reader rejects are not
+ * rows. The index remembers the size and modification time of the data file
+ * and is rebuilt by open() when either changes.
+ */
+public class ChunkIndex {
+
+	public static final String EXTENSION = ".idx";
+	public static final int DEFAULT_BLOCK_ROWS = 1 << 16;
+
+	private static final int MAGIC = 0x4C53514B;
+	private static final int VERSION = 1;
+
+	private final String dataFile;
+	private final long dataSize;
+	private final long dataModified;
+	private final int blockRows;
+	private final long rows;
+	private final int blocks;
+	// file offset and first row of each block
+	private final long[] byteStarts;
+	private final long[] rowStarts;
+	private final double[] minX;
+	private final double[] maxX;
+	private final RegressionAccumulator[] statistics;
+
+	private ChunkIndex(String dataFile, long dataSize, long dataModified, int blockRows, long rows, int blocks) {
+		this.dataFile = dataFile;
+		this.dataSize = dataSize;
+		this.dataModified = dataModified;
+		this.blockRows = blockRows;
+		this.rows = rows;
+		this.blocks = blocks;
+		byteStarts = new long[blocks];
+		rowStarts = new long[blocks];
+		minX = new double[blocks];
+		maxX = new double[blocks];
+		statistics = new RegressionAccumulator[blocks];
+	}
+
+	/**
+	 * Loads the index beside a data file, building and saving it first if it
+	 * is missing or out of date
+	 */
+	public static ChunkIndex open(String dataFile, int blockRows) throws IOException {
+		File index = new File(dataFile + EXTENSION);
+		if (index.exists()) {
+			try {
+				ChunkIndex response = load(dataFile, index.getPath());
+				if (response.isCurrent() && response.blockRows == blockRows) {
+					return response;
+				}
+			} catch (IOException e) {
+				System.out.println("Error: Rebuilding index, " + e.getMessage());
+			}
+		}
+		ChunkIndex response = build(dataFile, blockRows);
+		response.save(index.getPath());
+		return response;
+	}
+
+	/**
+	 * Scans a data file once, collecting statistics for every blockRows rows
+	 */
+	public static ChunkIndex build(String dataFile, int blockRows) throws IOException {
+		if (blockRows <= 0) {
+			throw new IllegalArgumentException("Block rows must be positive, was " + blockRows);
+		}
+		File file = new File(dataFile);
+		long dataSize = file.length();
+		long dataModified = file.lastModified();
+
+		int capacity = 16;
+		long[] byteStarts = new long[capacity];
+		double[] minX = new double[capacity];
+		double[] maxX = new double[capacity];
+		RegressionAccumulator[] statistics = new RegressionAccumulator[capacity];
+		int blocks = 0;
+		long rows = 0;
+
+		try (MappedDataReader reader = new MappedDataReader(dataFile)) {
+			long lineStart = reader.position();
+			while (reader.next()) {
+				double w = weightOf(reader);
+				if (Double.isNaN(w)) {
+					System.out.println("Error: Not 2D Vector! (line " + reader.lineNumber() + ")");
+					lineStart = reader.position();
+					continue;
+				}
+				if (rows % blockRows == 0) {
+					if (blocks == capacity) {
+						capacity *= 2;
+						byteStarts = Arrays.copyOf(byteStarts, capacity);
+						minX = Arrays.copyOf(minX, capacity);
+						maxX = Arrays.copyOf(maxX, capacity);
+						statistics = Arrays.copyOf(statistics, capacity);
+					}
+					byteStarts[blocks] = lineStart;
+					minX[blocks] = Double.POSITIVE_INFINITY;
+					maxX[blocks] = Double.NEGATIVE_INFINITY;
+					statistics[blocks] = new RegressionAccumulator();
+					blocks++;
+				}
+				double x = reader.field(0);
+				int block = blocks - 1;
+				statistics[block].add(x, reader.field(1), w);
+				minX[block] = Math.min(minX[block], x);
+				maxX[block] = Math.max(maxX[block], x);
+				rows++;
+				lineStart = reader.position();
+			}
+		}
+
+		ChunkIndex response = new ChunkIndex(dataFile, dataSize, dataModified, blockRows, rows, blocks);
+		for (int b = 0; b < blocks; b++) {
+			response.byteStarts[b] = byteStarts[b];
+			response.rowStarts[b] = (long) b * blockRows;
+			response.minX[b] = minX[b];
+			response.maxX[b] = maxX[b];
+			response.statistics[b] = statistics[b];
+		}
+		return response;
+	}
+
+	/**
+	 * Reads an index saved for the given data file
+	 */
+	public static ChunkIndex load(String dataFile, String indexFile) throws IOException {
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)))) {
+			if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+				throw new IOException(indexFile + " is not a chunk index");
+			}
+			long dataSize = in.readLong();
+			long dataModified = in.readLong();
+			int blockRows = in.readInt();
+			long rows = in.readLong();
+			int blocks = in.readInt();
+			ChunkIndex response = new ChunkIndex(dataFile, dataSize, dataModified, blockRows, rows, blocks);
+			for (int b = 0; b < blocks; b++) {
+				response.byteStarts[b] = in.readLong();
+				response.rowStarts[b] = (long) b * blockRows;
+				response.minX[b] = in.readDouble();
+				response.maxX[b] = in.readDouble();
+				response.statistics[b] = RegressionAccumulator.readFrom(in);
+			}
+			return response;
+		}
+	}
+
+	/**
+	 * Writes the index to a file
+	 */
+	public void save(String indexFile) throws IOException {
+		try (DataOutputStream out = new DataOutputStream(
+				new BufferedOutputStream(new FileOutputStream(indexFile)))) {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeLong(dataSize);
+			out.writeLong(dataModified);
+			out.writeInt(blockRows);
+			out.writeLong(rows);
+			out.writeInt(blocks);
+			for (int b = 0; b < blocks; b++) {
+				out.writeLong(byteStarts[b]);
+				out.writeDouble(minX[b]);
+				out.writeDouble(maxX[b]);
+				statistics[b].writeTo(out);
+			}
+		}
+	}
+
+	/**
+	 * Returns true if the data file is unchanged since the index was built
+	 */
+	public boolean isCurrent() {
+		File file = new File(dataFile);
+		return file.length() == dataSize && file.lastModified() == dataModified;
+	}
+
+	/**
+	 * Returns the number of points in the data file
+	 */
+	public long rows() {
+		return rows;
+	}
+
+	/**
+	 * Returns the number of blocks
+	 */
+	public int blocks() {
+		return blocks;
+	}
+
+	/**
+	 * Returns the number of rows in a full block
+	 */
+	public int blockRows() {
+		return blockRows;
+	}
+
+	/**
+	 * Returns the statistics of one block
+	 */
+	public RegressionAccumulator block(int block) {
+		return new RegressionAccumulator(statistics[block]);
+	}
+
+	/**
+	 * Returns the statistics of the whole file, without reading it
+	 */
+	public RegressionAccumulator fitAll() {
+		RegressionAccumulator response = new RegressionAccumulator();
+		for (int b = 0; b < blocks; b++) {
+			response.merge(statistics[b]);
+		}
+		return response;
+	}
+
+	/**
+	 * Fits rows [from, to). Whole blocks come from the index; at most the two
+	 * blocks at the ends of the range are reread.
+	 */
+	public RegressionAccumulator fitRows(long from, long to) throws IOException {
+		from = Math.max(from, 0);
+		to = Math.min(to, rows);
+		RegressionAccumulator response = new RegressionAccumulator();
+		if (from >= to) {
+			return response;
+		}
+		int first = (int) (from / blockRows);
+		int last = (int) ((to - 1) / blockRows);
+		for (int b = first; b <= last; b++) {
+			long start = rowStarts[b];
+			long end = start + statistics[b].count();
+			if (from <= start && end <= to) {
+				response.merge(statistics[b]);
+			} else {
+				scanRows(b, Math.max(from, start) - start, Math.min(to, end) - start, response);
+			}
+		}
+		return response;
+	}
+
+	/**
+	 * Fits every point with minX <= x <= maxX. Blocks wholly inside the range
+	 * come from the index and blocks wholly outside it are skipped, so on
+	 * data sorted by x only the two blocks at the ends are reread.
+	 */
+	public RegressionAccumulator fitRange(double minX, double maxX) throws IOException {
+		RegressionAccumulator response = new RegressionAccumulator();
+		for (int b = 0; b < blocks; b++) {
+			if (this.maxX[b] < minX || this.minX[b] > maxX) {
+				continue;
+			}
+			if (minX <= this.minX[b] && this.maxX[b] <= maxX) {
+				response.merge(statistics[b]);
+			} else {
+				scanRange(b, minX, maxX, response);
+			}
+		}
+		return response;
+	}
+
+	/**
+	 * Adds rows [from, to) of a block, counted from the start of the block
+	 */
+	private void scanRows(int block, long from, long to, RegressionAccumulator response) throws IOException {
+		try (MappedDataReader reader = openBlock(block)) {
+			long row = 0;
+			while (row < to && reader.next()) {
+				double w = weightOf(reader);
+				if (Double.isNaN(w)) {
+					continue;
+				}
+				if (row >= from) {
+					response.add(reader.field(0), reader.field(1), w);
+				}
+				row++;
+			}
+		}
+	}
+
+	/**
+	 * Adds the points of a block with x in [minX, maxX]
+	 */
+	private void scanRange(int block, double minX, double maxX, RegressionAccumulator response)
+			throws IOException {
+		try (MappedDataReader reader = openBlock(block)) {
+			long remaining = statistics[block].count();
+			while (remaining > 0 && reader.next()) {
+				double w = weightOf(reader);
+				if (Double.isNaN(w)) {
+					continue;
+				}
+				double x = reader.field(0);
+				if (x >= minX && x <= maxX) {
+					response.add(x, reader.field(1), w);
+				}
+				remaining--;
+			}
+		}
+	}
+
+	/**
+	 * Returns the weight of the reader's current line: 1 for x, y, 1 / sigma^2
+	 * for x, y, sigma, and NaN for a line that is not a point
+	 */
+	private static double weightOf(MappedDataReader reader) {
+		if (reader.fieldCount() == 2) {
+			return 1;
+		}
+		if (reader.fieldCount() == 3) {
+			return PointConsumer.weightOf(reader.field(2));
+		}
+		return Double.NaN;
+	}
+
+	private MappedDataReader openBlock(int block) throws IOException {
+		if (!isCurrent()) {
+			throw new IOException(dataFile + " changed since it was indexed");
+		}
+		long end = block + 1 < blocks ? byteStarts[block + 1] : -1;
+		FileChannel channel = FileChannel.open(Paths.get(dataFile), StandardOpenOption.READ);
+		return new MappedDataReader(channel, byteStarts[block], end);
+	}
+}
@@ -0,0 +1,412 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Binary columnar data file, so repeat fits over a data set skip decimal
+ * parsing entirely. Layout, all little-endian:
+ *
+ * <pre>
+ * header (40 bytes)
+ *   int  magic "LSQC"     int  version
+ *   int  columns          int  chunkRows
+ *   long rows             int  chunkCount    int  reserved
+ *   long statsOffset
+ * chunks, each holding every column of up to chunkRows rows in turn
+ *   double[n] column 0, double[n] column 1, ...
+ * statistics at statsOffset, per chunk and column
+ *   double min, max, sum, sumSquares
+ * </pre>
+ *
+ * Each chunk is memory mapped when first read and its columns handed out as
+ * read-only DoubleBuffer views, so reading copies nothing.
+ */
+public class ColumnarFile implements Closeable {
+
+	public static final int MAGIC = 0x4351534C;
+	public static final int VERSION = 1;
+	public static final int HEADER_BYTES = 40;
+	public static final int DEFAULT_CHUNK_ROWS = 1 << 16;
+
+	// doubles stored per chunk and column
+	private static final int STATISTICS = 4;
+
+	private final FileChannel channel;
+	private final int columns;
+	private final int chunkRows;
+	private final long rows;
+	private final int chunkCount;
+	private final double[] statistics;
+	private final ByteBuffer[] chunks;
+
+	/**
+	 * Opens a columnar file and reads its header and statistics
+	 */
+	public ColumnarFile(String fileName) throws IOException {
+		channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ);
+		try {
+			ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+			readFully(header, 0);
+			if (header.getInt(0) != MAGIC) {
+				throw new IOException(fileName + " is not a columnar data file");
+			}
+			if (header.getInt(4) != VERSION) {
+				throw new IOException("Unsupported columnar file version " + header.getInt(4));
+			}
+			columns = header.getInt(8);
+			chunkRows = header.getInt(12);
+			rows = header.getLong(16);
+			chunkCount = header.getInt(24);
+			long statsOffset = header.getLong(32);
+
+			statistics = new double[chunkCount * columns * STATISTICS];
+			ByteBuffer footer = ByteBuffer.allocate(statistics.length * 8).order(ByteOrder.LITTLE_ENDIAN);
+			readFully(footer, statsOffset);
+			footer.flip();
+			footer.asDoubleBuffer().get(statistics);
+			chunks = new ByteBuffer[chunkCount];
+		} catch (IOException | RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Returns true if the file starts with the columnar magic number
+	 */
+	public static boolean isColumnar(String fileName) {
+		try (FileChannel file = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ)) {
+			ByteBuffer magic = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+			return file.read(magic, 0) == 4 && magic.getInt(0) == MAGIC;
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Converts a tab-separated text file into a columnar file. The first row
+	 * fixes the number of columns; rows of any other width are reported and
+	 * skipped.
+	 *
+	 * @return the number of rows written, 0 if the text file has no valid rows,
+	 *         in which case no binary file is left behind
+	 */
+	public static long convert(String textFile, String binaryFile, int chunkRows) throws IOException {
+		if (chunkRows <= 0) {
+			throw new IllegalArgumentException("Chunk rows must be positive, was " + chunkRows);
+		}
+		long rows = writeColumns(textFile, binaryFile, chunkRows);
+		if (rows == 0) {
+			Files.deleteIfExists(Paths.get(binaryFile));
+			System.out.println("Error: No valid rows in " + textFile);
+		}
+		return rows;
+	}
+
+	/**
+	 * Does the conversion, writing nothing past the reserved header if there
+	 * are no valid rows
+	 */
+	private static long writeColumns(String textFile, String binaryFile, int chunkRows) throws IOException {
+		try (MappedDataReader reader = new MappedDataReader(textFile);
+				FileChannel out = FileChannel.open(Paths.get(binaryFile), StandardOpenOption.CREATE,
+						StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			int columns = -1;
+			long rows = 0;
+			int chunkCount = 0;
+			long position = HEADER_BYTES;
+			int filled = 0;
+			ByteBuffer chunk = null;
+			double[] statistics = new double[0];
+
+			while (reader.next()) {
+				if (columns < 0) {
+					columns = reader.fieldCount();
+					if ((long) chunkRows * columns * 8 > Integer.MAX_VALUE) {
+						throw new IllegalArgumentException("Chunks of " + chunkRows + " rows are too large to map");
+					}
+					chunk = ByteBuffer.allocate(chunkRows * columns * 8).order(ByteOrder.LITTLE_ENDIAN);
+				} else if (reader.fieldCount() != columns) {
+					System.out.println("Error: Expected " + columns + " columns on line " + reader.lineNumber());
+					continue;
+				}
+
+				if (filled == 0) {
+					int needed = (chunkCount + 1) * columns * STATISTICS;
+					if (needed > statistics.length) {
+						double[] grown = new double[Math.max(needed, statistics.length * 2)];
+						System.arraycopy(statistics, 0, grown, 0, statistics.length);
+						statistics = grown;
+					}
+					int at = chunkCount * columns * STATISTICS;
+					for (int j = 0; j < columns; j++, at += STATISTICS) {
+						statistics[at] = Double.POSITIVE_INFINITY;
+						statistics[at + 1] = Double.NEGATIVE_INFINITY;
+						statistics[at + 2] = 0;
+						statistics[at + 3] = 0;
+					}
+				}
+
+				// column j of this chunk starts at j * chunkRows, squeezed on flush
+				int at = chunkCount * columns * STATISTICS;
+				for (int j = 0; j < columns; j++, at += STATISTICS) {
+					double value = reader.field(j);
+					chunk.putDouble((j * chunkRows + filled) * 8, value);
+					statistics[at] = Math.min(statistics[at], value);
+					statistics[at + 1] = Math.max(statistics[at + 1], value);
+					statistics[at + 2] += value;
+					statistics[at + 3] += value * value;
+				}
+				filled++;
+				rows++;
+
+				if (filled == chunkRows) {
+					position += writeChunk(out, chunk, columns, chunkRows, filled, position);
+					chunkCount++;
+					filled = 0;
+				}
+			}
+			if (filled > 0) {
+				position += writeChunk(out, chunk, columns, chunkRows, filled, position);
+				chunkCount++;
+			}
+			if (rows == 0) {
+				return 0;
+			}
+
+			int statisticsLength = chunkCount * columns * STATISTICS;
+			ByteBuffer footer = ByteBuffer.allocate(statisticsLength * 8).order(ByteOrder.LITTLE_ENDIAN);
+			footer.asDoubleBuffer().put(statistics, 0, statisticsLength);
+			writeFully(out, footer, position);
+
+			ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+			header.putInt(MAGIC).putInt(VERSION).putInt(columns).putInt(chunkRows);
+			header.putLong(rows).putInt(chunkCount).putInt(0).putLong(position);
+			header.flip();
+			writeFully(out, header, 0);
+			return rows;
+		}
+	}
+
+	/**
+	 * Writes the first rows of each column of a chunk buffer back to back
+	 *
+	 * @return the number of bytes written
+	 */
+	private static long writeChunk(FileChannel out, ByteBuffer chunk, int columns, int chunkRows, int rows,
+			long position) throws IOException {
+		long written = 0;
+		for (int j = 0; j < columns; j++) {
+			ByteBuffer column = chunk.duplicate();
+			column.limit((j * chunkRows + rows) * 8);
+			column.position(j * chunkRows * 8);
+			written += writeFully(out, column, position + written);
+		}
+		return written;
+	}
+
+	private static long writeFully(FileChannel out, ByteBuffer buffer, long position) throws IOException {
+		long written = 0;
+		while (buffer.hasRemaining()) {
+			written += out.write(buffer, position + written);
+		}
+		return written;
+	}
+
+	private void readFully(ByteBuffer buffer, long position) throws IOException {
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer, position + buffer.position()) < 0) {
+				throw new IOException("Columnar file is truncated");
+			}
+		}
+	}
+
+	/**
+	 * Returns the number of rows in the file
+	 */
+	public long rows() {
+		return rows;
+	}
+
+	/**
+	 * Returns the number of values in each row
+	 */
+	public int columns() {
+		return columns;
+	}
+
+	/**
+	 * Returns the number of chunks the rows are stored in
+	 */
+	public int chunkCount() {
+		return chunkCount;
+	}
+
+	/**
+	 * Returns the number of rows in a full chunk
+	 */
+	public int chunkRows() {
+		return chunkRows;
+	}
+
+	/**
+	 * Returns the number of rows in one chunk, which is less than chunkRows()
+	 * only for the last chunk
+	 */
+	public int chunkSize(int chunk) {
+		return (int) Math.min(chunkRows, rows - (long) chunk * chunkRows);
+	}
+
+	/**
+	 * Returns the row index of the first row of a chunk
+	 */
+	public long chunkStart(int chunk) {
+		return (long) chunk * chunkRows;
+	}
+
+	/**
+	 * Returns a read-only view of one column of a chunk, mapping the chunk on
+	 * first use
+	 */
+	public DoubleBuffer column(int chunk, int column) throws IOException {
+		if (column < 0 || column >= columns) {
+			throw new IllegalArgumentException("No column " + column + " in a " + columns + " column file");
+		}
+		ByteBuffer bytes = chunk(chunk).duplicate().order(ByteOrder.LITTLE_ENDIAN);
+		int size = chunkSize(chunk);
+		bytes.position(column * size * 8);
+		bytes.limit((column + 1) * size * 8);
+		return bytes.slice().order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer();
+	}
+
+	private ByteBuffer chunk(int chunk) throws IOException {
+		if (chunks[chunk] == null) {
+			long start = HEADER_BYTES + (long) chunk * chunkRows * columns * 8;
+			long length = (long) chunkSize(chunk) * columns * 8;
+			chunks[chunk] = channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+		}
+		return chunks[chunk];
+	}
+
+	public double min(int chunk, int column) {
+		return statistics[(chunk * columns + column) * STATISTICS];
+	}
+
+	public double max(int chunk, int column) {
+		return statistics[(chunk * columns + column) * STATISTICS + 1];
+	}
+
+	public double sum(int chunk, int column) {
+		return statistics[(chunk * columns + column) * STATISTICS + 2];
+	}
+
+	public double sumSquares(int chunk, int column) {
+		return statistics[(chunk * columns + column) * STATISTICS + 3];
+	}
+
+	/**
+	 * Streams the first two columns of every row to the consumer, with weight
+	 * 1 / sigma^2 when a third column holds sigma
+	 *
+	 * @return the number of points read
+	 */
+	public long readPoints(PointConsumer consumer) throws IOException {
+		if (columns < 2) {
+			throw new IllegalArgumentException("Need two columns for points, file has " + columns);
+		}
+		long points = 0;
+		for (int c = 0; c < chunkCount; c++) {
+			DoubleBuffer xs = column(c, 0);
+			DoubleBuffer ys = column(c, 1);
+			if (columns > 2) {
+				DoubleBuffer sigmas = column(c, 2);
+				for (int i = 0, n = chunkSize(c); i < n; i++) {
+					double weight = PointConsumer.weightOf(sigmas.get(i));
+					if (Double.isNaN(weight)) {
+						System.out.println("Error: Sigma must be positive (row " + (chunkStart(c) + i) + ")");
+						continue;
+					}
+					consumer.accept(xs.get(i), ys.get(i), weight);
+					points++;
+				}
+			} else {
+				for (int i = 0, n = chunkSize(c); i < n; i++) {
+					consumer.accept(xs.get(i), ys.get(i));
+				}
+				points += chunkSize(c);
+			}
+		}
+		return points;
+	}
+
+	/**
+	 * Copies the first two columns into a data set with a bulk get per chunk.
+	 * A third column is read as sigma and becomes the weights.
+	 */
+	public DataSet toDataSet() throws IOException {
+		if (columns < 2) {
+			throw new IllegalArgumentException("Need two columns for points, file has " + columns);
+		}
+		if (rows > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("Too many rows for a data set: " + rows);
+		}
+		double[] xs = new double[(int) rows];
+		double[] ys = new double[(int) rows];
+		for (int c = 0; c < chunkCount; c++) {
+			int start = (int) chunkStart(c);
+			int size = chunkSize(c);
+			column(c, 0).get(xs, start, size);
+			column(c, 1).get(ys, start, size);
+		}
+		if (columns < 3) {
+			return DataSet.of(xs, ys);
+		}
+		DataSet response = new DataSet((int) rows);
+		for (int c = 0; c < chunkCount; c++) {
+			int start = (int) chunkStart(c);
+			DoubleBuffer sigmas = column(c, 2);
+			for (int i = 0, n = chunkSize(c); i < n; i++) {
+				double weight = PointConsumer.weightOf(sigmas.get(i));
+				if (Double.isNaN(weight)) {
+					System.out.println("Error: Sigma must be positive (row " + (start + i) + ")");
+					continue;
+				}
+				response.add(xs[start + i], ys[start + i], weight);
+			}
+		}
+		return response;
+	}
+
+	@Override
+	public void close() throws IOException {
+		for (int c = 0; c < chunkCount; c++) {
+			chunks[c] = null;
+		}
+		channel.close();
+	}
+
+	/**
+	 * Arguments: text file, binary file, and optionally the rows per chunk
+	 */
+	public static void main(String[] args) {
+		if (args.length < 2) {
+			System.out.println("Usage: ColumnarFile <text file> <binary file> [chunk rows]");
+			return;
+		}
+		int chunkRows = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_CHUNK_ROWS;
+		try {
+			long rows = convert(args[0], args[1], chunkRows);
+			if (rows > 0) {
+				System.out.println("Wrote " + rows + " rows (" + Files.size(Paths.get(args[1])) + " bytes)");
+			}
+		} catch (IOException e) {
+			System.out.println("Error: " + e.getMessage());
+		}
+	}
+}
@@ -0,0 +1,80 @@
+import java.util.Arrays;
+
+/**
+ * Estimates the 1-norm of the inverse of a matrix from a few solves with it,
+ * using Hager's method as refined by Higham. The estimate is a lower bound
+ * that is almost always within a factor of 3 of the true norm, and costs a
+ * handful of O(n^2) solves instead of the O(n^3) of forming the inverse.
+ */
+final class ConditionEstimator {
+
+	private static final int MAX_ITERATIONS = 5;
+
+	/**
+	 * Solves with the matrix, or with its transpose, overwriting x
+	 */
+	interface Solver {
+		void solve(double[] x, boolean transpose);
+	}
+
+	private ConditionEstimator() {
+	}
+
+	/**
+	 * Returns an estimate of the 1-norm of the inverse of an n x n matrix
+	 */
+	static double inverseNorm1(int n, Solver solver) {
+		if (n == 0) {
+			return 0;
+		}
+		double[] x = new double[n];
+		double[] y = new double[n];
+		double[] z = new double[n];
+		Arrays.fill(x, 1.0 / n);
+
+		double estimate = 0;
+		int previous = -1;
+		for (int iteration = 0; iteration < MAX_ITERATIONS; iteration++) {
+			// y <- A^-1 x
+			System.arraycopy(x, 0, y, 0, n);
+			solver.solve(y, false);
+			estimate = 0;
+			for (int i = 0; i < n; i++) {
+				estimate += Math.abs(y[i]);
+			}
+
+			// z <- A^-T sign(y)
+			for (int i = 0; i < n; i++) {
+				z[i] = y[i] >= 0 ? 1 : -1;
+			}
+			solver.solve(z, true);
+
+			int best = 0;
+			double zx = 0;
+			for (int i = 0; i < n; i++) {
+				if (Math.abs(z[i]) > Math.abs(z[best])) {
+					best = i;
+				}
+				zx += z[i] * x[i];
+			}
+			if (iteration > 0 && (best == previous || Math.abs(z[best]) <= zx)) {
+				break;
+			}
+			Arrays.fill(x, 0);
+			x[best] = 1;
+			previous = best;
+		}
+
+		// Higham's alternating vector guards against the rare bad case
+		for (int i = 0; i < n; i++) {
+			x[i] = (i % 2 == 0 ? 1 : -1) * (1 + (double) i / Math.max(1, n - 1));
+		}
+		solver.solve(x, false);
+		double alternate = 0;
+		for (int i = 0; i < n; i++) {
+			alternate += Math.abs(x[i]);
+		}
+		alternate = 2 * alternate / (3 * n);
+		return Math.max(estimate, alternate);
+	}
+}
@@ -0,0 +1,286 @@
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Two-dimensional data points stored as parallel primitive columns, with
+ * optional per-point weights. Point i is (x(i), y(i)); the columns grow as
+ * points are appended.
+ *
+ * A slice shares the columns of the data set it came from. Appending to a
+ * slice first gives it its own copy, so the original is never overwritten.
+ *
+ * Hot loops can read the backing arrays directly: point i of the data set
+ * is at index offset() + i of xs(), ys() and weights().
+ */
+public class DataSet implements PointConsumer {
+
+	private static final int DEFAULT_CAPACITY = 16;
+
+	private double[] xs;
+	private double[] ys;
+	// null while every weight is 1
+	private double[] weights;
+	private int offset;
+	private int size;
+	// true if the arrays may be shared with another data set
+	private boolean shared;
+
+	/**
+	 * Constructor - empty
+	 */
+	public DataSet() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Constructor - empty, with room for capacity points
+	 */
+	public DataSet(int capacity) {
+		capacity = Math.max(capacity, 1);
+		xs = new double[capacity];
+		ys = new double[capacity];
+	}
+
+	private DataSet(double[] xs, double[] ys, double[] weights, int offset, int size) {
+		this.xs = xs;
+		this.ys = ys;
+		this.weights = weights;
+		this.offset = offset;
+		this.size = size;
+		this.shared = true;
+	}
+
+	/**
+	 * Wraps existing columns without copying them
+	 */
+	public static DataSet of(double[] xs, double[] ys) {
+		if (xs.length != ys.length) {
+			throw new IllegalArgumentException("Columns differ in length: " + xs.length + " and " + ys.length);
+		}
+		return new DataSet(xs, ys, null, 0, xs.length);
+	}
+
+	/**
+	 * Reads every point of a data file, either tab-separated text or a
+	 * columnar binary file. A third column is the uncertainty sigma of y and
+	 * gives the point weight 1 / sigma^2.
+	 */
+	public static DataSet read(String fileName) {
+		if (ColumnarFile.isColumnar(fileName)) {
+			try (ColumnarFile file = new ColumnarFile(fileName)) {
+				return file.toDataSet();
+			} catch (IOException | IllegalArgumentException e) {
+				System.out.println("Error: " + e.getMessage());
+				return new DataSet();
+			}
+		}
+		DataSet response = new DataSet();
+		MappedDataReader.read(fileName, response);
+		return response;
+	}
+
+	/**
+	 * Copies a list of points, ignoring z
+	 */
+	public static DataSet of(Iterable<Vector3> points) {
+		DataSet response = new DataSet();
+		for (Vector3 point : points) {
+			response.add(point.getX(), point.getY());
+		}
+		return response;
+	}
+
+	@Override
+	public void accept(double x, double y) {
+		add(x, y);
+	}
+
+	@Override
+	public void accept(double x, double y, double w) {
+		add(x, y, w);
+	}
+
+	/**
+	 * Appends a point with unit weight
+	 */
+	public void add(double x, double y) {
+		ensureCapacity(size + 1);
+		int at = offset + size;
+		xs[at] = x;
+		ys[at] = y;
+		if (weights != null) {
+			weights[at] = 1;
+		}
+		size++;
+	}
+
+	/**
+	 * Appends a weighted point
+	 */
+	public void add(double x, double y, double weight) {
+		ensureCapacity(size + 1);
+		if (weight != 1 && weights == null) {
+			createWeights();
+		}
+		int at = offset + size;
+		xs[at] = x;
+		ys[at] = y;
+		if (weights != null) {
+			weights[at] = weight;
+		}
+		size++;
+	}
+
+	/**
+	 * Appends count points from parallel arrays, starting at from
+	 */
+	public void addAll(double[] xs, double[] ys, int from, int count) {
+		ensureCapacity(size + count);
+		int at = offset + size;
+		System.arraycopy(xs, from, this.xs, at, count);
+		System.arraycopy(ys, from, this.ys, at, count);
+		if (weights != null) {
+			Arrays.fill(weights, at, at + count, 1);
+		}
+		size += count;
+	}
+
+	/**
+	 * Appends every point of another data set
+	 */
+	public void addAll(DataSet other) {
+		int start = size;
+		addAll(other.xs, other.ys, other.offset, other.size);
+		if (other.weights != null) {
+			if (weights == null) {
+				createWeights();
+			}
+			System.arraycopy(other.weights, other.offset, weights, offset + start, other.size);
+		}
+	}
+
+	/**
+	 * Removes every point, keeping the columns
+	 */
+	public void clear() {
+		size = 0;
+		weights = null;
+		if (shared) {
+			xs = new double[DEFAULT_CAPACITY];
+			ys = new double[DEFAULT_CAPACITY];
+			offset = 0;
+			shared = false;
+		}
+	}
+
+	/**
+	 * Returns points [from, to) as a data set sharing these columns
+	 */
+	public DataSet slice(int from, int to) {
+		if (from < 0 || to > size || from > to) {
+			throw new IndexOutOfBoundsException("Slice [" + from + ", " + to + ") of " + size + " points");
+		}
+		shared = true;
+		return new DataSet(xs, ys, weights, offset + from, to - from);
+	}
+
+	/**
+	 * Returns the number of points
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @return x coordinate of point i
+	 */
+	public double x(int i) {
+		return xs[offset + i];
+	}
+
+	/**
+	 * @return y coordinate of point i
+	 */
+	public double y(int i) {
+		return ys[offset + i];
+	}
+
+	/**
+	 * @return weight of point i
+	 */
+	public double weight(int i) {
+		return weights == null ? 1 : weights[offset + i];
+	}
+
+	/**
+	 * Returns true if any point has a weight other than 1
+	 */
+	public boolean hasWeights() {
+		return weights != null;
+	}
+
+	/**
+	 * Returns point i as a vector in the xy plane
+	 */
+	public Vector3 get(int i) {
+		return new Vector3(x(i), y(i), 0);
+	}
+
+	/**
+	 * Index of point 0 in the backing arrays
+	 */
+	public int offset() {
+		return offset;
+	}
+
+	/**
+	 * Backing x column
+	 */
+	public double[] xs() {
+		return xs;
+	}
+
+	/**
+	 * Backing y column
+	 */
+	public double[] ys() {
+		return ys;
+	}
+
+	/**
+	 * Backing weight column, or null if every weight is 1
+	 */
+	public double[] weights() {
+		return weights;
+	}
+
+	private void createWeights() {
+		weights = new double[xs.length];
+		Arrays.fill(weights, offset, offset + size, 1);
+	}
+
+	/**
+	 * Makes room for count points, copying the columns if they are shared or
+	 * too small
+	 */
+	private void ensureCapacity(int count) {
+		if (!shared && offset + count <= xs.length) {
+			return;
+		}
+		int capacity = Math.max(count, shared ? size : xs.length * 2);
+		capacity = Math.max(capacity, DEFAULT_CAPACITY);
+		xs = copyColumn(xs, capacity);
+		ys = copyColumn(ys, capacity);
+		if (weights != null) {
+			weights = copyColumn(weights, capacity);
+		}
+		offset = 0;
+		shared = false;
+	}
+
+	private double[] copyColumn(double[] column, int capacity) {
+		double[] response = new double[capacity];
+		System.arraycopy(column, offset, response, 0, size);
+		return response;
+	}
+}
@@ -0,0 +1,121 @@
+import java.util.Arrays;
+
+/**
+ * Point counts binned into a fixed grid of cells over the plotted square
+ * [-size/2, size/2] x [-size/2, size/2]. Adding a point is O(1), and drawing
+ * the raster touches each cell once, so the cost of a frame does not depend
+ * on how many points were binned. Points outside the square are counted
+ * separately and not drawn.
+ */
+public class DensityRaster {
+
+	private final int columns;
+	private final int rows;
+	private final double size;
+	// cell (column, row) at counts[row * columns + column], row 0 at the top
+	private final int[] counts;
+	private int maxCount;
+	private long total;
+	private long outside;
+
+	/**
+	 * Constructor - an empty columns x rows grid spanning size units each way
+	 */
+	public DensityRaster(int columns, int rows, double size) {
+		if (columns <= 0 || rows <= 0) {
+			throw new IllegalArgumentException("Raster must have cells, was " + columns + "x" + rows);
+		}
+		this.columns = columns;
+		this.rows = rows;
+		this.size = size;
+		this.counts = new int[columns * rows];
+	}
+
+	/**
+	 * Bins one point. A point with a NaN coordinate counts as outside.
+	 */
+	public void add(double x, double y) {
+		int column = (int) Math.floor((x / size + .5) * columns);
+		int row = (int) Math.floor((.5 - y / size) * rows);
+		total++;
+		// (int) NaN is 0, which would land in a real cell
+		if (Double.isNaN(x) || Double.isNaN(y) || column < 0 || column >= columns || row < 0 || row >= rows) {
+			outside++;
+			return;
+		}
+		int count = ++counts[row * columns + column];
+		if (count > maxCount) {
+			maxCount = count;
+		}
+	}
+
+	/**
+	 * Bins every point of a data set
+	 */
+	public void addAll(DataSet data) {
+		double[] xs = data.xs();
+		double[] ys = data.ys();
+		int end = data.offset() + data.size();
+		for (int i = data.offset(); i < end; i++) {
+			add(xs[i], ys[i]);
+		}
+	}
+
+	/**
+	 * Empties every cell
+	 */
+	public void clear() {
+		Arrays.fill(counts, 0);
+		maxCount = 0;
+		total = 0;
+		outside = 0;
+	}
+
+	public int columns() {
+		return columns;
+	}
+
+	public int rows() {
+		return rows;
+	}
+
+	/**
+	 * Returns the number of points binned into a cell
+	 */
+	public int count(int column, int row) {
+		return counts[row * columns + column];
+	}
+
+	/**
+	 * Returns the count of the fullest cell
+	 */
+	public int maxCount() {
+		return maxCount;
+	}
+
+	/**
+	 * Returns the number of points added, including those outside the grid
+	 */
+	public long total() {
+		return total;
+	}
+
+	/**
+	 * Returns the number of points that fell outside the grid
+	 */
+	public long outside() {
+		return outside;
+	}
+
+	/**
+	 * Returns the shade of a cell between 0 (empty) and 1 (fullest), on a log
+	 * scale so sparse cells stay visible next to dense ones
+	 */
+	public double density(int column, int row) {
+		int count = counts[row * columns + column];
+		if (count == 0) {
+			return 0;
+		}
+		return Math.log1p(count) / Math.log1p(maxCount);
+	}
+}
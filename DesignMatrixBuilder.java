@@ -0,0 +1,199 @@
+/**
+ * Describes the columns of a design matrix built from k input columns:
+ * powers of each input up to a degree, optional pairwise interactions, and
+ * an optional intercept. Features are laid out as
+ *
+ * <pre>
+ * x1, x1^2 .. x1^d, x2 .. xk^d, x1*x2, x1*x3 .. x(k-1)*xk, 1
+ * </pre>
+ *
+ * so the default single-input builder gives the [x, 1] columns used for
+ * y = m*x + b. Rows can be expanded one at a time and streamed into
+ * NormalEquations, or a whole design matrix can be built for small data.
+ */
+public class DesignMatrixBuilder {
+
+	private final int inputs;
+	private int degree = 1;
+	private boolean interactions = false;
+	private boolean intercept = true;
+
+	/**
+	 * Constructor - linear in each input, with an intercept
+	 */
+	public DesignMatrixBuilder(int inputs) {
+		if (inputs < 1) {
+			throw new IllegalArgumentException("Need at least one input column");
+		}
+		this.inputs = inputs;
+	}
+
+	/**
+	 * Sets the highest power of each input
+	 */
+	public DesignMatrixBuilder degree(int degree) {
+		if (degree < 1) {
+			throw new IllegalArgumentException("Degree must be at least 1");
+		}
+		this.degree = degree;
+		return this;
+	}
+
+	/**
+	 * Turns products of each pair of inputs on or off
+	 */
+	public DesignMatrixBuilder interactions(boolean interactions) {
+		this.interactions = interactions;
+		return this;
+	}
+
+	/**
+	 * Turns the constant column on or off
+	 */
+	public DesignMatrixBuilder intercept(boolean intercept) {
+		this.intercept = intercept;
+		return this;
+	}
+
+	/**
+	 * Returns the number of input columns
+	 */
+	public int inputs() {
+		return inputs;
+	}
+
+	/**
+	 * Returns the number of design matrix columns
+	 */
+	public int features() {
+		int count = inputs * degree;
+		if (interactions) {
+			count += inputs * (inputs - 1) / 2;
+		}
+		if (intercept) {
+			count++;
+		}
+		return count;
+	}
+
+	/**
+	 * Returns the index of the intercept feature, or -1 if there is none
+	 */
+	public int interceptIndex() {
+		return intercept ? features() - 1 : -1;
+	}
+
+	/**
+	 * Writes the features of one row into a destination array
+	 *
+	 * @param values - the inputs, starting at values[from]
+	 * @param features - at least features() long
+	 */
+	public void expand(double[] values, int from, double[] features) {
+		int at = 0;
+		for (int i = 0; i < inputs; i++) {
+			double x = values[from + i];
+			double power = x;
+			features[at++] = power;
+			for (int d = 2; d <= degree; d++) {
+				power *= x;
+				features[at++] = power;
+			}
+		}
+		if (interactions) {
+			for (int i = 0; i < inputs; i++) {
+				for (int j = i + 1; j < inputs; j++) {
+					features[at++] = values[from + i] * values[from + j];
+				}
+			}
+		}
+		if (intercept) {
+			features[at] = 1;
+		}
+	}
+
+	/**
+	 * Returns an empty system sized for this design
+	 */
+	public NormalEquations newNormalEquations() {
+		return new NormalEquations(features());
+	}
+
+	/**
+	 * Returns a consumer that expands data rows of the form x1 .. xk, y, or
+	 * x1 .. xk, y, sigma for a point weighted by 1 / sigma^2, and adds them to
+	 * the given system. Rows of the wrong width are reported and skipped.
+	 */
+	public RowConsumer accumulator(NormalEquations target) {
+		if (target.size() != features()) {
+			throw new IllegalArgumentException("System has " + target.size() + " features, design has " + features());
+		}
+		double[] features = new double[features()];
+		return (fields, count) -> {
+			double weight = 1;
+			if (count == inputs + 2) {
+				weight = PointConsumer.weightOf(fields[inputs + 1]);
+				if (Double.isNaN(weight)) {
+					System.out.println("Error: Sigma must be positive, was " + fields[inputs + 1]);
+					return;
+				}
+			} else if (count != inputs + 1) {
+				System.out.println("Error: Expected " + (inputs + 1) + " columns, found " + count);
+				return;
+			}
+			expand(fields, 0, features);
+			target.add(features, fields[inputs], weight);
+		};
+	}
+
+	/**
+	 * Adds every point of a data set to a system, with its weight. Only for
+	 * single-input designs, where x is the input and y the observation.
+	 */
+	public void accumulate(DataSet data, NormalEquations target) {
+		if (inputs != 1) {
+			throw new IllegalArgumentException("A data set only supplies one input, design has " + inputs);
+		}
+		double[] features = new double[features()];
+		double[] xs = data.xs();
+		double[] ys = data.ys();
+		double[] weights = data.weights();
+		int end = data.offset() + data.size();
+		for (int i = data.offset(); i < end; i++) {
+			expand(xs, i, features);
+			target.add(features, ys[i], weights == null ? 1 : weights[i]);
+		}
+	}
+
+	/**
+	 * Builds the full design matrix for a matrix of inputs, one row per
+	 * observation
+	 */
+	public Matrix build(Matrix inputs) {
+		if (inputs.columns() != this.inputs) {
+			throw new IllegalArgumentException("Expected " + this.inputs + " input columns, found " + inputs.columns());
+		}
+		int width = features();
+		Matrix design = new Matrix(inputs.rows(), width);
+		double[] values = new double[this.inputs];
+		double[] features = new double[width];
+		for (int i = 0; i < inputs.rows(); i++) {
+			for (int j = 0; j < this.inputs; j++) {
+				values[j] = inputs.get(i, j);
+			}
+			expand(values, 0, features);
+			for (int j = 0; j < width; j++) {
+				design.set(features[j], i, j);
+			}
+		}
+		return design;
+	}
+
+	/**
+	 * Describes the model, e.g. "inputs=2 degree=3 interactions=false
+	 * intercept=true"
+	 */
+	public String toString() {
+		return "inputs=" + inputs + " degree=" + degree + " interactions=" + interactions + " intercept=" + intercept;
+	}
+}
@@ -0,0 +1,139 @@
+/**
+ * Eigendecomposition A = V diag(lambda) V^T of a symmetric matrix by cyclic
+ * Jacobi rotations. Each rotation zeroes one off-diagonal pair; sweeps over
+ * every pair repeat until the off-diagonal part is negligible, usually
+ * within ten sweeps. Jacobi is slower than tridiagonal QR for large n but
+ * finds small eigenvalues to high relative accuracy, which is what a
+ * normal matrix with a wide range of eigenvalues needs.
+ */
+public class EigenDecomposition {
+
+	private static final int MAX_SWEEPS = 100;
+
+	private final int size;
+	// working copy of A, row-major; becomes diagonal
+	private final double[] a;
+	// eigenvectors as columns, row-major
+	private final double[] v;
+	private final double[] eigenvalues;
+
+	/**
+	 * Constructor - decomposes a symmetric matrix, reading its upper triangle
+	 */
+	public EigenDecomposition(Matrix symmetric) {
+		size = symmetric.rows();
+		if (symmetric.columns() != size) {
+			throw new IllegalArgumentException("Expected a square matrix, was " + size + "x" + symmetric.columns());
+		}
+		a = new double[size * size];
+		v = new double[size * size];
+		for (int i = 0; i < size; i++) {
+			v[i * size + i] = 1;
+			for (int j = i; j < size; j++) {
+				double value = symmetric.get(i, j);
+				a[i * size + j] = value;
+				a[j * size + i] = value;
+			}
+		}
+		eigenvalues = new double[size];
+		decompose();
+	}
+
+	private void decompose() {
+		int n = size;
+		for (int sweep = 0; sweep < MAX_SWEEPS; sweep++) {
+			double off = 0;
+			double diagonal = 0;
+			for (int i = 0; i < n; i++) {
+				diagonal += a[i * n + i] * a[i * n + i];
+				for (int j = i + 1; j < n; j++) {
+					off += a[i * n + j] * a[i * n + j];
+				}
+			}
+			if (off <= 1E-30 * diagonal || off == 0) {
+				break;
+			}
+
+			for (int p = 0; p < n - 1; p++) {
+				for (int q = p + 1; q < n; q++) {
+					double apq = a[p * n + q];
+					if (apq == 0) {
+						continue;
+					}
+					double app = a[p * n + p];
+					double aqq = a[q * n + q];
+					// rotation angle that zeroes a[p][q]
+					double theta = (aqq - app) / (2 * apq);
+					double t = Math.signum(theta) / (Math.abs(theta) + Math.sqrt(theta * theta + 1));
+					if (theta == 0) {
+						t = 1;
+					}
+					double c = 1 / Math.sqrt(t * t + 1);
+					double s = t * c;
+
+					a[p * n + p] = app - t * apq;
+					a[q * n + q] = aqq + t * apq;
+					a[p * n + q] = 0;
+					a[q * n + p] = 0;
+					for (int r = 0; r < n; r++) {
+						if (r != p && r != q) {
+							double arp = a[r * n + p];
+							double arq = a[r * n + q];
+							double rp = c * arp - s * arq;
+							double rq = s * arp + c * arq;
+							a[r * n + p] = rp;
+							a[p * n + r] = rp;
+							a[r * n + q] = rq;
+							a[q * n + r] = rq;
+						}
+						double vrp = v[r * n + p];
+						double vrq = v[r * n + q];
+						v[r * n + p] = c * vrp - s * vrq;
+						v[r * n + q] = s * vrp + c * vrq;
+					}
+				}
+			}
+		}
+		for (int i = 0; i < n; i++) {
+			eigenvalues[i] = a[i * n + i];
+		}
+	}
+
+	/**
+	 * Returns the dimension of the decomposed matrix
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the eigenvalues, in the order of the columns of V
+	 */
+	public double[] eigenvalues() {
+		return eigenvalues.clone();
+	}
+
+	public double eigenvalue(int i) {
+		return eigenvalues[i];
+	}
+
+	/**
+	 * Returns the orthogonal matrix whose columns are the eigenvectors
+	 */
+	public Matrix getV() {
+		Matrix response = new Matrix(size, size);
+		for (int i = 0; i < size; i++) {
+			for (int j = 0; j < size; j++) {
+				response.set(v[i * size + j], i, j);
+			}
+		}
+		return response;
+	}
+
+	/**
+	 * Returns component i of eigenvector j
+	 */
+	public double vector(int i, int j) {
+		return v[i * size + j];
+	}
+}
@@ -0,0 +1,95 @@
+/**
+ * Fits y = m*x + b with exponential forgetting: each new point multiplies the
+ * weight of everything before it by a decay factor, so a point k samples old
+ * counts decay^k as much as the newest one. Each update is O(1) and keeps no
+ * history.
+ */
+public class ExponentialRegression {
+
+	private final double decay;
+	private final RegressionAccumulator statistics = new RegressionAccumulator();
+
+	/**
+	 * Constructor
+	 * 
+	 * @param decay - weight kept by old points per new point, in (0, 1]
+	 */
+	public ExponentialRegression(double decay) {
+		if (!(decay > 0 && decay <= 1)) {
+			throw new IllegalArgumentException("Decay must be in (0, 1], was " + decay);
+		}
+		this.decay = decay;
+	}
+
+	/**
+	 * Returns a fit in which a point's weight halves every halfLife samples
+	 */
+	public static ExponentialRegression withHalfLife(double halfLife) {
+		return new ExponentialRegression(Math.pow(0.5, 1 / halfLife));
+	}
+
+	/**
+	 * Adds a point, fading all earlier ones
+	 */
+	public void add(double x, double y) {
+		statistics.scale(decay);
+		statistics.add(x, y);
+	}
+
+	/**
+	 * Forgets every point
+	 */
+	public void clear() {
+		statistics.clear();
+	}
+
+	/**
+	 * Returns the weight kept by old points per new point
+	 */
+	public double decay() {
+		return decay;
+	}
+
+	/**
+	 * @return slope of the decayed fit
+	 */
+	public double slope() {
+		return statistics.slope();
+	}
+
+	/**
+	 * @return y intercept of the decayed fit
+	 */
+	public double intercept() {
+		return statistics.intercept();
+	}
+
+	/**
+	 * Returns the weighted sum of squared residuals
+	 */
+	public double chiSquared() {
+		return statistics.sumSquaredResiduals();
+	}
+
+	/**
+	 * Returns the decayed statistics
+	 */
+	public RegressionAccumulator statistics() {
+		return statistics;
+	}
+
+	/**
+	 * Fits a series in one pass. Entry i of each output array describes the
+	 * decayed fit of the points up to and including point i.
+	 */
+	public static void decayed(double[] xs, double[] ys, int count, double decay, double[] slopes,
+			double[] intercepts, double[] chiSquared) {
+		ExponentialRegression regression = new ExponentialRegression(decay);
+		for (int i = 0; i < count; i++) {
+			regression.add(xs[i], ys[i]);
+			slopes[i] = regression.slope();
+			intercepts[i] = regression.intercept();
+			chiSquared[i] = regression.chiSquared();
+		}
+	}
+}
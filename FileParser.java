@@ -1,19 +1,47 @@
 import java.io.File;
 import java.util.ArrayList;
 import java.util.Scanner;
+import java.util.function.Consumer;
 
 public class FileParser {
 
 	private static Scanner scanner;
 
+	/**
+	 * Reads every point of the file, with z always 0. A sigma column is read
+	 * only to drop rows whose sigma is not positive; use the PointConsumer
+	 * form or DataSet.read for the weights.
+	 */
 	public static ArrayList<Vector3> parseFile(String fileName) {
 		ArrayList<Vector3> response = new ArrayList<Vector3>();
+		parseLines(fileName, point -> {
+			point.setZ(0);
+			response.add(point);
+		});
+		return response;
+	}
+
+	/**
+	 * Streams each point of the file to the consumer without keeping them.
+	 * Points with a sigma column are passed with weight 1 / sigma^2.
+	 */
+	public static void parseFile(String fileName, PointConsumer consumer) {
+		parseLines(fileName, point -> {
+			if (point.getZ() == 0) {
+				consumer.accept(point.getX(), point.getY());
+			} else {
+				consumer.accept(point.getX(), point.getY(), PointConsumer.weightOf(point.getZ()));
+			}
+		});
+	}
+
+	private static void parseLines(String fileName, Consumer<Vector3> sink) {
 		try {
 			scanner = new Scanner(new File(fileName));
 			while (scanner.hasNextLine()) {
 				try {
 					String line = scanner.nextLine();
-					response.add(processLine(line));
+					sink.accept(processLine(line));
 				} catch (Exception e) {
 					System.out.println("Error: " + e.getMessage());
 				}
@@ -21,14 +49,15 @@ public class FileParser {
 		} catch (Exception e) {
 			System.out.println("Error: " + e.getMessage());
 		}
-
-		return response;
 	}
 
+	/**
+	 * Parses x, y or x, y, sigma. Sigma goes in z.
+	 */
 	private static Vector3 processLine(String line) {
 		String[] divided = line.split("\t");
 		Vector3 response = new Vector3(0, 0, 0);
-		if (divided.length > 2) {
+		if (divided.length > 3) {
 			System.out.println("Error: Not 2D Vector!");
 		} else {
 			try {
@@ -37,6 +66,15 @@ public class FileParser {
 			} catch (Exception e) {
 				System.out.println("Error: " + e.getMessage());
 			}
+			// a point without a usable uncertainty is dropped, not given weight
+			// 1; the caller reports the parse error or the bad value once
+			if (divided.length == 3) {
+				double sigma = Double.parseDouble(divided[2]);
+				if (!(sigma > 0)) {
+					throw new IllegalArgumentException("Sigma must be positive, was " + sigma);
+				}
+				response.setZ(sigma);
+			}
 		}
 		return response;
 	}
@@ -0,0 +1,494 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Cache of fit results, keyed by a hash of the data file contents together
+ * with the model description from DesignMatrixBuilder.toString(). Results
+ * live in an in-memory LRU bounded by an approximate byte size, and
+ * optionally in a directory on disk so they outlive the process.
+ *
+ * Hashing a file still reads all of it, so the hash of each file is also
+ * remembered against its size, modification time and status change time, in
+ * memory and next to the fits on disk. A repeat fit of an unchanged file then
+ * costs a stat and a lookup, even from a new process. As in git's racy-stat
+ * check, a memo taken within the clock granularity of the file's last change
+ * is not trusted, since a same-size rewrite in that window keeps every stamp.
+ */
+public class FitCache {
+
+	public static final long DEFAULT_BYTES = 64L << 20;
+
+	private static final int MAGIC = 0x4C535146;
+	private static final int HASH_MAGIC = 0x4C535148;
+	private static final int VERSION = 1;
+	private static final int HASH_VERSION = 2;
+	// coarsest timestamp resolution of common file systems (FAT), in ms
+	private static final long CLOCK_GRANULARITY = 2000;
+	private static final long WINDOW = 1L << 30;
+	private static final long PRIME1 = 0x9E3779B185EBCA87L;
+	private static final long PRIME2 = 0xC2B2AE3D27D4EB4FL;
+
+	/**
+	 * One cached fit: coefficients in feature order, residual statistics, and
+	 * the Cholesky factor of X^T X for solving against new right sides
+	 */
+	public static class Fit {
+		private final double[] coefficients;
+		private final long count;
+		private final double chiSquared;
+		private final double rSquared;
+		private final CholeskySolver factorization;
+
+		public Fit(double[] coefficients, long count, double chiSquared, double rSquared,
+				CholeskySolver factorization) {
+			this.coefficients = coefficients;
+			this.count = count;
+			this.chiSquared = chiSquared;
+			this.rSquared = rSquared;
+			this.factorization = factorization;
+		}
+
+		/**
+		 * Fits the normal equations of a design with the Cholesky factor
+		 *
+		 * @return the fit, or null if X^T X is singular
+		 */
+		public static Fit solve(NormalEquations normal, DesignMatrixBuilder design) {
+			int n = normal.size();
+			CholeskySolver factorization = new CholeskySolver(n);
+			if (!factorization.factor(normal)) {
+				return null;
+			}
+			double[] coefficients = new double[n];
+			for (int i = 0; i < n; i++) {
+				coefficients[i] = normal.moment(i);
+			}
+			factorization.solveInPlace(coefficients);
+
+			// sum (y - x.b)^2 = y.y - b.X^T y once b solves the normal equations
+			double explained = 0;
+			for (int i = 0; i < n; i++) {
+				explained += coefficients[i] * normal.moment(i);
+			}
+			double chiSquared = Math.max(0, normal.sumYY() - explained);
+
+			double rSquared = Double.NaN;
+			int intercept = design.interceptIndex();
+			if (intercept >= 0 && normal.weight() > 0) {
+				double sumY = normal.moment(intercept);
+				double total = normal.sumYY() - sumY * sumY / normal.weight();
+				if (total > 0) {
+					rSquared = 1 - chiSquared / total;
+				}
+			}
+			return new Fit(coefficients, normal.count(), chiSquared, rSquared, factorization);
+		}
+
+		/**
+		 * Returns a copy of the coefficients, in feature order
+		 */
+		public double[] coefficients() {
+			return coefficients.clone();
+		}
+
+		public double coefficient(int i) {
+			return coefficients[i];
+		}
+
+		/**
+		 * Returns the number of data rows fitted
+		 */
+		public long count() {
+			return count;
+		}
+
+		public double chiSquared() {
+			return chiSquared;
+		}
+
+		/**
+		 * Returns R squared, NaN without an intercept or if y never varies
+		 */
+		public double rSquared() {
+			return rSquared;
+		}
+
+		/**
+		 * Returns a copy of the Cholesky factor of X^T X, so refactoring it
+		 * cannot change later cache hits
+		 */
+		public CholeskySolver factorization() {
+			return new CholeskySolver(factorization);
+		}
+
+		/**
+		 * Returns the approximate memory held by this fit
+		 */
+		long bytes() {
+			int n = coefficients.length;
+			return 96 + 8L * n + 8L * n * (n + 1) / 2;
+		}
+
+		void writeTo(DataOutputStream out) throws IOException {
+			out.writeInt(coefficients.length);
+			for (double value : coefficients) {
+				out.writeDouble(value);
+			}
+			out.writeLong(count);
+			out.writeDouble(chiSquared);
+			out.writeDouble(rSquared);
+			factorization.writeTo(out);
+		}
+
+		static Fit readFrom(DataInputStream in) throws IOException {
+			double[] coefficients = new double[in.readInt()];
+			for (int i = 0; i < coefficients.length; i++) {
+				coefficients[i] = in.readDouble();
+			}
+			long count = in.readLong();
+			double chiSquared = in.readDouble();
+			double rSquared = in.readDouble();
+			return new Fit(coefficients, count, chiSquared, rSquared, CholeskySolver.readFrom(in));
+		}
+	}
+
+	private final long maxBytes;
+	private final File directory;
+	// access-ordered, so iteration starts at the least recently used fit
+	private final LinkedHashMap<String, Fit> fits = new LinkedHashMap<>(16, 0.75f, true);
+	// canonical path -> {size, modified, changed, hashed, hash}
+	private final Map<String, long[]> hashes = new HashMap<>();
+	private long bytes;
+	private long hits;
+	private long misses;
+
+	/**
+	 * Constructor - memory only
+	 */
+	public FitCache(long maxBytes) {
+		this(maxBytes, null);
+	}
+
+	/**
+	 * Constructor - memory backed by a directory, which is created if needed.
+	 * A null directory keeps the cache in memory only.
+	 */
+	public FitCache(long maxBytes, String directory) {
+		this.maxBytes = maxBytes;
+		this.directory = directory == null ? null : new File(directory);
+		if (this.directory != null && !this.directory.isDirectory() && !this.directory.mkdirs()) {
+			System.out.println("Error: Cannot create cache directory " + directory);
+		}
+	}
+
+	/**
+	 * Returns the cached fit of a data file, fitting and caching it on a miss.
+	 * Data rows are x1 .. xk, y; a columnar file supplies x, y.
+	 *
+	 * @return the fit, or null if the design is singular for this data or
+	 *         does not match a columnar file
+	 */
+	public Fit fit(String dataFile, DesignMatrixBuilder design) throws IOException {
+		boolean columnar = ColumnarFile.isColumnar(dataFile);
+		if (columnar && design.inputs() != 1) {
+			System.out.println("Error: A columnar file only supplies one input, design has " + design.inputs());
+			return null;
+		}
+		String key = key(contentHash(dataFile), design);
+		Fit response = get(key);
+		if (response != null) {
+			return response;
+		}
+
+		NormalEquations normal = design.newNormalEquations();
+		if (columnar) {
+			design.accumulate(DataSet.read(dataFile), normal);
+		} else {
+			MappedDataReader.readRows(dataFile, design.accumulator(normal));
+		}
+		response = Fit.solve(normal, design);
+		if (response != null) {
+			put(key, response);
+		}
+		return response;
+	}
+
+	/**
+	 * Builds the cache key of a data hash and a model
+	 */
+	public static String key(long contentHash, DesignMatrixBuilder design) {
+		return String.format("%016x", contentHash) + " " + design;
+	}
+
+	/**
+	 * Looks a fit up in memory, then on disk
+	 *
+	 * @return the fit, or null if it is not cached
+	 */
+	public synchronized Fit get(String key) {
+		Fit response = fits.get(key);
+		if (response == null && directory != null) {
+			response = readFit(key);
+			if (response != null) {
+				remember(key, response);
+			}
+		}
+		if (response == null) {
+			misses++;
+		} else {
+			hits++;
+		}
+		return response;
+	}
+
+	/**
+	 * Caches a fit in memory and, if there is a directory, on disk
+	 */
+	public synchronized void put(String key, Fit fit) {
+		remember(key, fit);
+		if (directory != null) {
+			writeFit(key, fit);
+		}
+	}
+
+	private void remember(String key, Fit fit) {
+		Fit old = fits.put(key, fit);
+		if (old != null) {
+			bytes -= old.bytes();
+		}
+		bytes += fit.bytes();
+		Iterator<Fit> eldest = fits.values().iterator();
+		while (bytes > maxBytes && eldest.hasNext()) {
+			Fit evicted = eldest.next();
+			if (evicted == fit) {
+				break;
+			}
+			bytes -= evicted.bytes();
+			eldest.remove();
+		}
+	}
+
+	/**
+	 * Empties the memory tier; the disk tier is kept
+	 */
+	public synchronized void clear() {
+		fits.clear();
+		bytes = 0;
+	}
+
+	/**
+	 * Returns the number of fits held in memory
+	 */
+	public synchronized int size() {
+		return fits.size();
+	}
+
+	/**
+	 * Returns the approximate memory held by cached fits
+	 */
+	public synchronized long bytes() {
+		return bytes;
+	}
+
+	public synchronized long hits() {
+		return hits;
+	}
+
+	public synchronized long misses() {
+		return misses;
+	}
+
+	private File fileOf(String key) {
+		return new File(directory, key.substring(0, 16) + "-" + Integer.toHexString(key.hashCode()) + ".fit");
+	}
+
+	private Fit readFit(String key) {
+		File file = fileOf(key);
+		if (!file.exists()) {
+			return null;
+		}
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+			if (in.readInt() != MAGIC || in.readInt() != VERSION || !in.readUTF().equals(key)) {
+				return null;
+			}
+			return Fit.readFrom(in);
+		} catch (IOException e) {
+			System.out.println("Error: " + e.getMessage());
+			return null;
+		}
+	}
+
+	private void writeFit(String key, Fit fit) {
+		try (DataOutputStream out = new DataOutputStream(
+				new BufferedOutputStream(new FileOutputStream(fileOf(key))))) {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeUTF(key);
+			fit.writeTo(out);
+		} catch (IOException e) {
+			System.out.println("Error: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Returns the content hash of a file, rehashing unless it was last hashed,
+	 * by this cache or any cache sharing its directory, with the same size
+	 * and time stamps, and clearly after its last change
+	 */
+	public synchronized long contentHash(String fileName) throws IOException {
+		File file = new File(fileName);
+		String path = file.getCanonicalPath();
+		BasicFileAttributes attributes = Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+		long size = attributes.size();
+		long modified = attributes.lastModifiedTime().toMillis();
+		long changed = changeTime(file, modified);
+		long[] known = hashes.get(path);
+		if (known == null && directory != null) {
+			known = readHash(path);
+		}
+		if (known != null && known[0] == size && known[1] == modified && known[2] == changed
+				&& Math.max(modified, changed) + CLOCK_GRANULARITY < known[3]) {
+			hashes.put(path, known);
+			return known[4];
+		}
+		// taken before reading, so a write during hashing makes the memo racy
+		long hashed = System.currentTimeMillis();
+		long hash = hash(fileName);
+		known = new long[] { size, modified, changed, hashed, hash };
+		hashes.put(path, known);
+		if (directory != null) {
+			writeHash(path, known);
+		}
+		return hash;
+	}
+
+	private File hashFileOf(String path) {
+		return new File(directory, Integer.toHexString(path.hashCode()) + ".hash");
+	}
+
+	/**
+	 * Returns the status change time of a file, which copies and restores
+	 * that keep the modification time still update, or modified where the
+	 * file system does not report it
+	 */
+	private static long changeTime(File file, long modified) {
+		try {
+			return ((FileTime) Files.getAttribute(file.toPath(), "unix:ctime")).toMillis();
+		} catch (UnsupportedOperationException | IllegalArgumentException | IOException e) {
+			return modified;
+		}
+	}
+
+	/**
+	 * Reads the remembered {size, modified, changed, hashed, hash} of a data
+	 * file
+	 *
+	 * @return the entry, or null if there is none for this path
+	 */
+	private long[] readHash(String path) {
+		File file = hashFileOf(path);
+		if (!file.exists()) {
+			return null;
+		}
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+			if (in.readInt() != HASH_MAGIC || in.readInt() != HASH_VERSION || !in.readUTF().equals(path)) {
+				return null;
+			}
+			long[] response = new long[5];
+			for (int i = 0; i < response.length; i++) {
+				response[i] = in.readLong();
+			}
+			return response;
+		} catch (IOException e) {
+			System.out.println("Error: " + e.getMessage());
+			return null;
+		}
+	}
+
+	private void writeHash(String path, long[] known) {
+		try (DataOutputStream out = new DataOutputStream(
+				new BufferedOutputStream(new FileOutputStream(hashFileOf(path))))) {
+			out.writeInt(HASH_MAGIC);
+			out.writeInt(HASH_VERSION);
+			out.writeUTF(path);
+			for (long value : known) {
+				out.writeLong(value);
+			}
+		} catch (IOException e) {
+			System.out.println("Error: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * 64-bit hash of a file's bytes. Four independent lanes of 8-byte words
+	 * keep the multiplier busy, so hashing runs at close to memory speed.
+	 */
+	public static long hash(String fileName) throws IOException {
+		try (FileChannel channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ)) {
+			long size = channel.size();
+			long h1 = PRIME1;
+			long h2 = PRIME2;
+			long h3 = 0;
+			long h4 = -PRIME1;
+			long tail = 0;
+			int tailBytes = 0;
+
+			for (long start = 0; start < size; start += WINDOW) {
+				long length = Math.min(WINDOW, size - start);
+				MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+				buffer.order(ByteOrder.LITTLE_ENDIAN);
+				int at = 0;
+				int blocks = (int) (length / 32);
+				for (int b = 0; b < blocks; b++, at += 32) {
+					h1 = mix(h1, buffer.getLong(at));
+					h2 = mix(h2, buffer.getLong(at + 8));
+					h3 = mix(h3, buffer.getLong(at + 16));
+					h4 = mix(h4, buffer.getLong(at + 24));
+				}
+				// WINDOW is a multiple of 32, so only the last window has a tail
+				for (; at < length; at++) {
+					tail |= (buffer.get(at) & 0xFFL) << (8 * tailBytes);
+					if (++tailBytes == 8) {
+						h1 = mix(h1, tail);
+						tail = 0;
+						tailBytes = 0;
+					}
+				}
+			}
+
+			long hash = Long.rotateLeft(h1, 1) + Long.rotateLeft(h2, 7) + Long.rotateLeft(h3, 12)
+					+ Long.rotateLeft(h4, 18);
+			hash = mix(hash, tail) ^ size;
+			// final avalanche so nearby inputs spread over all bits
+			hash ^= hash >>> 33;
+			hash *= PRIME2;
+			hash ^= hash >>> 29;
+			hash *= PRIME1;
+			return hash ^ (hash >>> 32);
+		}
+	}
+
+	private static long mix(long lane, long word) {
+		lane += word * PRIME2;
+		lane = Long.rotateLeft(lane, 31);
+		return lane * PRIME1;
+	}
+}
@@ -0,0 +1,324 @@
+import java.util.Arrays;
+
+/**
+ * Least-squares solver for large sparse systems, minimizing |Ax - b| using
+ * nothing but products with A and A^T. Nothing the size of A^T A is ever
+ * formed, so memory stays O(nonzeros + rows + columns).
+ *
+ * Two methods are offered. LSQR (Paige and Saunders) is the more stable on
+ * ill-conditioned problems; CGLS is conjugate gradients on the normal
+ * equations, a little cheaper per iteration. Either can be preconditioned
+ * by scaling every column of A to unit norm, which often cuts the
+ * iterations sharply when columns differ greatly in scale.
+ *
+ * Work vectors are kept between solves of the same shape.
+ */
+public class IterativeSolver {
+
+	public enum Method {
+		LSQR, CGLS
+	}
+
+	private Method method = Method.LSQR;
+	private double tolerance = 1E-10;
+	private int maxIterations = 1000;
+	private boolean preconditioned = true;
+
+	private int iterations;
+	private boolean converged;
+	private double residualNorm;
+
+	// work vectors, m = rows and n = columns of the last system
+	private double[] scaling = new double[0];
+	private double[] columnWork = new double[0];
+	private double[] columnProduct = new double[0];
+	private double[] rowProduct = new double[0];
+	private double[] u = new double[0];
+	private double[] v = new double[0];
+	private double[] w = new double[0];
+
+	/**
+	 * Chooses LSQR or CGLS
+	 */
+	public IterativeSolver method(Method method) {
+		this.method = method;
+		return this;
+	}
+
+	/**
+	 * Sets the relative tolerance: iteration stops once the residual, or its
+	 * projection A^T r, is this small relative to the problem
+	 */
+	public IterativeSolver tolerance(double tolerance) {
+		this.tolerance = tolerance;
+		return this;
+	}
+
+	/**
+	 * Sets the most iterations a solve may take
+	 */
+	public IterativeSolver maxIterations(int maxIterations) {
+		this.maxIterations = maxIterations;
+		return this;
+	}
+
+	/**
+	 * Turns column scaling on or off
+	 */
+	public IterativeSolver preconditioned(boolean preconditioned) {
+		this.preconditioned = preconditioned;
+		return this;
+	}
+
+	/**
+	 * Finds the x minimizing |Ax - b|
+	 *
+	 * @return x, one entry per column of a
+	 */
+	public double[] solve(SparseMatrix a, double[] b) {
+		if (b.length != a.rows()) {
+			throw new IllegalArgumentException("Right side has " + b.length + " rows, expected " + a.rows());
+		}
+		prepare(a);
+		double[] x = new double[a.columns()];
+		if (method == Method.LSQR) {
+			lsqr(a, b, x);
+		} else {
+			cgls(a, b, x);
+		}
+		// undo the column scaling: x = D y
+		for (int j = 0; j < x.length; j++) {
+			x[j] *= scaling[j];
+		}
+		return x;
+	}
+
+	/**
+	 * Solves for every column of a dense right side
+	 */
+	public Matrix solve(SparseMatrix a, Matrix rightSide) {
+		Matrix response = new Matrix(a.columns(), rightSide.columns());
+		double[] b = new double[a.rows()];
+		for (int c = 0; c < rightSide.columns(); c++) {
+			for (int i = 0; i < b.length; i++) {
+				b[i] = rightSide.get(i, c);
+			}
+			double[] x = solve(a, b);
+			for (int j = 0; j < x.length; j++) {
+				response.set(x[j], j, c);
+			}
+		}
+		return response;
+	}
+
+	private void prepare(SparseMatrix a) {
+		int m = a.rows();
+		int n = a.columns();
+		if (scaling.length != n) {
+			scaling = new double[n];
+			columnWork = new double[n];
+			columnProduct = new double[n];
+			v = new double[n];
+			w = new double[n];
+		}
+		if (u.length != m) {
+			u = new double[m];
+			rowProduct = new double[m];
+		}
+		if (preconditioned) {
+			a.columnSquaredNorms(scaling);
+			for (int j = 0; j < n; j++) {
+				// an empty column stays unscaled; its coefficient is 0 anyway
+				scaling[j] = scaling[j] > 0 ? 1 / Math.sqrt(scaling[j]) : 1;
+			}
+		} else {
+			Arrays.fill(scaling, 1);
+		}
+		iterations = 0;
+		converged = false;
+	}
+
+	/**
+	 * out = (A D) x
+	 */
+	private void multiply(SparseMatrix a, double[] x, double[] out) {
+		for (int j = 0; j < x.length; j++) {
+			columnWork[j] = x[j] * scaling[j];
+		}
+		a.multiply(columnWork, out);
+	}
+
+	/**
+	 * out = (A D)^T x
+	 */
+	private void transposeMultiply(SparseMatrix a, double[] x, double[] out) {
+		a.transposeMultiply(x, out);
+		for (int j = 0; j < out.length; j++) {
+			out[j] *= scaling[j];
+		}
+	}
+
+	private void lsqr(SparseMatrix a, double[] b, double[] x) {
+		int m = a.rows();
+		int n = a.columns();
+		System.arraycopy(b, 0, u, 0, m);
+		double beta = normalize(u, m);
+		double normB = beta;
+		residualNorm = beta;
+		if (beta == 0) {
+			converged = true;
+			return;
+		}
+		transposeMultiply(a, u, v);
+		double alpha = normalize(v, n);
+		if (alpha == 0) {
+			// b is orthogonal to the range of A, so x = 0 is optimal
+			converged = true;
+			return;
+		}
+		System.arraycopy(v, 0, w, 0, n);
+		double phiBar = beta;
+		double rhoBar = alpha;
+		// running estimate of the Frobenius norm of A D
+		double normA = 0;
+
+		while (iterations < maxIterations) {
+			iterations++;
+
+			// bidiagonalization: beta u = A v - alpha u, alpha v = A^T u - beta v
+			multiply(a, v, rowProduct);
+			for (int i = 0; i < m; i++) {
+				u[i] = rowProduct[i] - alpha * u[i];
+			}
+			beta = normalize(u, m);
+			normA = Math.sqrt(normA * normA + alpha * alpha + beta * beta);
+
+			transposeMultiply(a, u, columnProduct);
+			for (int j = 0; j < n; j++) {
+				v[j] = columnProduct[j] - beta * v[j];
+			}
+			alpha = normalize(v, n);
+
+			// plane rotation eliminating the subdiagonal beta
+			double rho = Math.hypot(rhoBar, beta);
+			double c = rhoBar / rho;
+			double s = beta / rho;
+			double theta = s * alpha;
+			rhoBar = -c * alpha;
+			double phi = c * phiBar;
+			phiBar = s * phiBar;
+
+			double step = phi / rho;
+			double ratio = theta / rho;
+			for (int j = 0; j < n; j++) {
+				x[j] += step * w[j];
+				w[j] = v[j] - ratio * w[j];
+			}
+
+			residualNorm = phiBar;
+			// |A^T r| = phiBar * alpha * |c|
+			double normalResidual = phiBar * alpha * Math.abs(c);
+			if (phiBar <= tolerance * normB || normalResidual <= tolerance * normA * phiBar || alpha == 0) {
+				converged = true;
+				return;
+			}
+		}
+	}
+
+	private void cgls(SparseMatrix a, double[] b, double[] x) {
+		int m = a.rows();
+		int n = a.columns();
+		// u holds the residual r = b - A D y, v the search direction p,
+		// w the gradient s = (A D)^T r
+		System.arraycopy(b, 0, u, 0, m);
+		double normB = norm(u, m);
+		residualNorm = normB;
+		transposeMultiply(a, u, w);
+		System.arraycopy(w, 0, v, 0, n);
+		double gamma = dot(w, w, n);
+		double normGradient = Math.sqrt(gamma);
+		if (normB == 0 || gamma == 0) {
+			converged = true;
+			return;
+		}
+		double[] q = rowProduct;
+
+		while (iterations < maxIterations) {
+			iterations++;
+			multiply(a, v, q);
+			double delta = dot(q, q, m);
+			if (delta == 0) {
+				converged = true;
+				return;
+			}
+			double step = gamma / delta;
+			for (int j = 0; j < n; j++) {
+				x[j] += step * v[j];
+			}
+			for (int i = 0; i < m; i++) {
+				u[i] -= step * q[i];
+			}
+			transposeMultiply(a, u, w);
+			double gammaNext = dot(w, w, n);
+			residualNorm = norm(u, m);
+			if (Math.sqrt(gammaNext) <= tolerance * normGradient || residualNorm <= tolerance * normB) {
+				converged = true;
+				return;
+			}
+			double beta = gammaNext / gamma;
+			for (int j = 0; j < n; j++) {
+				v[j] = w[j] + beta * v[j];
+			}
+			gamma = gammaNext;
+		}
+	}
+
+	private static double dot(double[] a, double[] b, int n) {
+		double sum = 0;
+		for (int i = 0; i < n; i++) {
+			sum += a[i] * b[i];
+		}
+		return sum;
+	}
+
+	private static double norm(double[] a, int n) {
+		return Math.sqrt(dot(a, a, n));
+	}
+
+	/**
+	 * Scales a vector to unit length
+	 *
+	 * @return its original length
+	 */
+	private static double normalize(double[] a, int n) {
+		double length = norm(a, n);
+		if (length > 0) {
+			for (int i = 0; i < n; i++) {
+				a[i] /= length;
+			}
+		}
+		return length;
+	}
+
+	/**
+	 * Returns the number of iterations the last solve took
+	 */
+	public int iterations() {
+		return iterations;
+	}
+
+	/**
+	 * Returns true if the last solve met the tolerance within the iteration
+	 * cap
+	 */
+	public boolean isConverged() {
+		return converged;
+	}
+
+	/**
+	 * Returns |b - Ax| at the end of the last solve
+	 */
+	public double residualNorm() {
+		return residualNorm;
+	}
+}
@@ -0,0 +1,291 @@
+/**
+ * LU decomposition with partial pivoting, computed in place on a flat
+ * row-major buffer. Factor once, then solve against as many right sides as
+ * needed.
+ *
+ * @author Alan Yang
+ *
+ */
+public class LUDecomposition {
+	private static final double error = 1E-30;
+
+	private final int size;
+	// L (unit diagonal, below) and U (on and above the diagonal), row-major
+	private final double[] lu;
+	// row i of the factored matrix is row pivot[i] of the original
+	private final int[] pivot;
+	private boolean singular;
+	private int pivotSign;
+	// 1-norm of the factored matrix, for condition estimates
+	private double norm1;
+
+	/**
+	 * Constructor - allocates buffers for an n x n system, call factor before
+	 * solving
+	 */
+	public LUDecomposition(int size) {
+		this.size = size;
+		this.lu = new double[size * size];
+		this.pivot = new int[size];
+		this.singular = true;
+	}
+
+	/**
+	 * Constructor - factors a square matrix
+	 */
+	public LUDecomposition(Matrix coefficients) {
+		this(coefficients.rows());
+		if (coefficients.columns() != size) {
+			throw new IllegalArgumentException("Matrix is not square");
+		}
+		for (int i = 0; i < size; i++) {
+			for (int j = 0; j < size; j++) {
+				lu[i * size + j] = coefficients.get(i, j);
+			}
+		}
+		decompose();
+	}
+
+	/**
+	 * Factors a row-major n x n matrix, reusing this object's buffers. The
+	 * input array is not modified.
+	 *
+	 * @return false if the matrix is singular
+	 */
+	public boolean factor(double[] coefficients) {
+		System.arraycopy(coefficients, 0, lu, 0, size * size);
+		decompose();
+		return !singular;
+	}
+
+	/**
+	 * Doolittle elimination with partial pivoting. Row swaps are done on the
+	 * buffer itself and recorded in the pivot vector.
+	 */
+	private void decompose() {
+		int n = size;
+		singular = false;
+		pivotSign = 1;
+		for (int i = 0; i < n; i++) {
+			pivot[i] = i;
+		}
+
+		norm1 = 0;
+		for (int j = 0; j < n; j++) {
+			double column = 0;
+			for (int i = 0; i < n; i++) {
+				column += Math.abs(lu[i * n + j]);
+			}
+			norm1 = Math.max(norm1, column);
+		}
+
+		for (int j = 0; j < n; j++) {
+			// find the largest pivot in this column
+			int best = j;
+			double max = Math.abs(lu[j * n + j]);
+			for (int i = j + 1; i < n; i++) {
+				double value = Math.abs(lu[i * n + j]);
+				if (value > max) {
+					max = value;
+					best = i;
+				}
+			}
+
+			if (best != j) {
+				swapRows(best, j);
+				int temp = pivot[best];
+				pivot[best] = pivot[j];
+				pivot[j] = temp;
+				pivotSign = -pivotSign;
+			}
+
+			double diagonal = lu[j * n + j];
+			if (Math.abs(diagonal) <= error) {
+				singular = true;
+				continue;
+			}
+
+			// eliminate below the pivot, storing the multipliers in place
+			int pivotRow = j * n;
+			for (int i = j + 1; i < n; i++) {
+				int row = i * n;
+				double multiplier = lu[row + j] / diagonal;
+				lu[row + j] = multiplier;
+				if (multiplier != 0) {
+					for (int k = j + 1; k < n; k++) {
+						lu[row + k] -= multiplier * lu[pivotRow + k];
+					}
+				}
+			}
+		}
+	}
+
+	private void swapRows(int row1, int row2) {
+		int a = row1 * size;
+		int b = row2 * size;
+		for (int k = 0; k < size; k++) {
+			double temp = lu[a + k];
+			lu[a + k] = lu[b + k];
+			lu[b + k] = temp;
+		}
+	}
+
+	/**
+	 * Returns the dimension of the factored matrix
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns true if a zero pivot was met during factoring
+	 */
+	public boolean isSingular() {
+		return singular;
+	}
+
+	/**
+	 * Determinant of the factored matrix
+	 */
+	public double determinant() {
+		double det = pivotSign;
+		for (int i = 0; i < size; i++) {
+			det *= lu[i * size + i];
+		}
+		return det;
+	}
+
+	/**
+	 * Estimates the 1-norm condition number of the factored matrix from a few
+	 * extra solves. Infinite if the matrix is singular.
+	 */
+	public double conditionEstimate() {
+		if (singular) {
+			return Double.POSITIVE_INFINITY;
+		}
+		double[] work = new double[size];
+		return norm1 * ConditionEstimator.inverseNorm1(size, (x, transpose) -> {
+			if (transpose) {
+				solveTransposeInPlace(x, work);
+			} else {
+				solveInPlace(x, work);
+			}
+		});
+	}
+
+	/**
+	 * Returns the inverse of the factored matrix, or null if it is singular
+	 */
+	public Matrix inverse() {
+		if (singular) {
+			return null;
+		}
+		return solve(Matrix.identity(size));
+	}
+
+	/**
+	 * Solves Ax=b for every column of the right side
+	 *
+	 * @return the solution, or null if the matrix is singular
+	 */
+	public Matrix solve(Matrix rightSide) {
+		if (rightSide.rows() != size) {
+			throw new IllegalArgumentException("Right side has " + rightSide.rows() + " rows, expected " + size);
+		}
+		if (singular) {
+			return null;
+		}
+
+		Matrix response = new Matrix(size, rightSide.columns());
+		double[] column = new double[size];
+		double[] work = new double[size];
+		for (int c = 0; c < rightSide.columns(); c++) {
+			for (int i = 0; i < size; i++) {
+				column[i] = rightSide.get(i, c);
+			}
+			solveInPlace(column, work);
+			for (int i = 0; i < size; i++) {
+				response.set(column[i], i, c);
+			}
+		}
+		return response;
+	}
+
+	/**
+	 * Solves Ax=b, overwriting b with x. Allocates nothing; work must hold at
+	 * least size() values.
+	 *
+	 * @return false if the matrix is singular (b is left untouched)
+	 */
+	public boolean solveInPlace(double[] b, double[] work) {
+		if (singular) {
+			return false;
+		}
+		int n = size;
+
+		// apply the row permutation
+		for (int i = 0; i < n; i++) {
+			work[i] = b[pivot[i]];
+		}
+
+		// forward substitution with unit lower triangle
+		for (int i = 0; i < n; i++) {
+			int row = i * n;
+			double value = work[i];
+			for (int k = 0; k < i; k++) {
+				value -= lu[row + k] * work[k];
+			}
+			work[i] = value;
+		}
+
+		// back substitution with upper triangle
+		for (int i = n - 1; i >= 0; i--) {
+			int row = i * n;
+			double value = work[i];
+			for (int k = i + 1; k < n; k++) {
+				value -= lu[row + k] * work[k];
+			}
+			work[i] = value / lu[row + i];
+		}
+
+		System.arraycopy(work, 0, b, 0, n);
+		return true;
+	}
+
+	/**
+	 * Solves (A^T)x=b, overwriting b with x. Allocates nothing; work must
+	 * hold at least size() values.
+	 *
+	 * @return false if the matrix is singular (b is left untouched)
+	 */
+	public boolean solveTransposeInPlace(double[] b, double[] work) {
+		if (singular) {
+			return false;
+		}
+		int n = size;
+
+		// A^T = U^T L^T P, so first solve with the lower triangle U^T
+		for (int i = 0; i < n; i++) {
+			double value = b[i];
+			for (int k = 0; k < i; k++) {
+				value -= lu[k * n + i] * work[k];
+			}
+			work[i] = value / lu[i * n + i];
+		}
+
+		// then with the unit upper triangle L^T
+		for (int i = n - 1; i >= 0; i--) {
+			double value = work[i];
+			for (int k = i + 1; k < n; k++) {
+				value -= lu[k * n + i] * work[k];
+			}
+			work[i] = value;
+		}
+
+		// and undo the row permutation
+		for (int i = 0; i < n; i++) {
+			b[pivot[i]] = work[i];
+		}
+		return true;
+	}
+}
@@ -0,0 +1,89 @@
+/**
+ * Solves the least-squares problem min |Ax - b|, choosing the method from
+ * the conditioning of the problem.
+ *
+ * The normal equations (A^T A) x = A^T b, solved by Cholesky, are fast, but
+ * their relative error grows like cond(A^T A) * 1E-16. They are used
+ * whenever the estimated condition number of A^T A is below CONDITION_LIMIT,
+ * which keeps the solution good to about 1E-9. Otherwise A is factored with
+ * Householder QR, whose error only grows like cond(A) * 1E-16.
+ *
+ * The full A^T A is only formed for the normal equations themselves. The
+ * choice is first made from the normal matrix of an evenly spaced sample of
+ * rows, costing O(n^3) however tall A is, and confirmed from the Cholesky
+ * factor of the full matrix. When QR is used, the estimate comes from R.
+ */
+public class LeastSquares {
+
+	public static final double CONDITION_LIMIT = 1E7;
+
+	// rows per column in the sample that predicts the conditioning
+	private static final int SAMPLE_ROWS_PER_COLUMN = 8;
+
+	private final Matrix solution;
+	private final double condition;
+	private final boolean usedQR;
+
+	/**
+	 * Constructor - solves for every column of b
+	 */
+	public LeastSquares(Matrix a, Matrix b) {
+		int sampleRows = SAMPLE_ROWS_PER_COLUMN * a.columns();
+		if (a.rows() <= sampleRows || sampleCondition(a, sampleRows) < CONDITION_LIMIT) {
+			CholeskySolver normal = new CholeskySolver(a.gram());
+			double estimate = normal.conditionEstimate();
+			if (estimate < CONDITION_LIMIT) {
+				solution = normal.solve(a.transposeMultiply(b));
+				condition = estimate;
+				usedQR = false;
+				return;
+			}
+		}
+
+		QRDecomposition qr = new QRDecomposition(a);
+		solution = qr.solve(b);
+		// cond(A^T A) = cond(R^T R), about cond(R)^2
+		double estimate = qr.conditionEstimate();
+		condition = estimate * estimate;
+		usedQR = true;
+	}
+
+	/**
+	 * Estimates the condition number of A^T A from rows spread evenly through
+	 * A. Scaling the rows down does not change the condition number, and a
+	 * sample is rarely better conditioned than the whole.
+	 */
+	private static double sampleCondition(Matrix a, int sampleRows) {
+		int n = a.columns();
+		Matrix sample = new Matrix(sampleRows, n);
+		for (int i = 0; i < sampleRows; i++) {
+			int row = (int) ((long) i * a.rows() / sampleRows);
+			for (int j = 0; j < n; j++) {
+				sample.set(a.get(row, j), i, j);
+			}
+		}
+		return new CholeskySolver(sample.gram()).conditionEstimate();
+	}
+
+	/**
+	 * Returns the coefficients, or null if A is rank deficient
+	 */
+	public Matrix getSolution() {
+		return solution;
+	}
+
+	/**
+	 * Returns the estimated condition number of A^T A
+	 */
+	public double conditionEstimate() {
+		return condition;
+	}
+
+	/**
+	 * Returns true if the problem was too ill-conditioned for the normal
+	 * equations and was solved by QR instead
+	 */
+	public boolean usedQR() {
+		return usedQR;
+	}
+}
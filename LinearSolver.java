@@ -1,5 +1,3 @@
-import java.util.*;
-
 /**
  * Solves Ax=b using Gaussian Elimination and Back Substitution
  * 
@@ -8,24 +6,31 @@ import java.util.*;
  */
 public class LinearSolver {
 	private static final double error = 1E-30;
-	Map<Integer, Integer> swaps;
 	Matrix coefficients;
 	Matrix rightSide;
 	Matrix solution;
+	LUDecomposition decomposition;
 
 	public LinearSolver(Matrix coefficients, Matrix rightSide) {
-		swaps = new HashMap<Integer, Integer>();
 		this.coefficients = coefficients;
 		this.rightSide = rightSide;
 
-		Matrix Augmented = upperTriangular(coefficients, rightSide);
-		solution = backSubstitute(Augmented);
+		decomposition = new LUDecomposition(coefficients);
+		solution = decomposition.solve(rightSide);
 	}
 
 	public Matrix getSolution() {		
 		return solution;
 	}
 
+	/**
+	 * Returns the factorization of the coefficients, for solving against
+	 * other right sides
+	 */
+	public LUDecomposition getDecomposition() {
+		return decomposition;
+	}
+
 	/*
 	 * returns upper triangular matrix, augmented with the right side
 	 */
@@ -33,24 +38,37 @@ public class LinearSolver {
 		int rows = coefficients.rows();
 		int columns = coefficients.columns();
 		Matrix augmented = coefficients.augment(rightSide);
-		
-		// get 0's below each pivot
-		for (int j = 0; j < columns; j++) {
-			// if 0 at pivot position, swap or move on to next column
-			if (Math.abs(augmented.get(j, j)) <= error){
-				for (int i = j + 1; i < rows; i++) {
-					// if a suitable pivot is found, do a row swap.
-					if (Math.abs(augmented.get(i, j)) >= error){
-						augmented = augmented.swapRows(i, j);
-						swaps.put(i, j);
-					}
+		int width = augmented.columns();
+
+		// get 0's below each pivot, working on the augmented matrix in place
+		for (int j = 0; j < columns && j < rows; j++) {
+			// partial pivoting - move the largest entry into the pivot position
+			int best = j;
+			for (int i = j + 1; i < rows; i++) {
+				if (Math.abs(augmented.get(i, j)) > Math.abs(augmented.get(best, j))) {
+					best = i;
 				}
-			} else{	// if no row swaps needed, proceed as normal for this column
-				for (int i = j + 1; i < rows; i++){
-					double multiplier = augmented.get(i, j) / augmented.get(j, j);
-					Matrix elementary = Matrix.identity(rows);
-					elementary.set(-multiplier, i, j);
-					augmented = elementary.multiply(augmented);
+			}
+			if (best != j) {
+				for (int k = j; k < width; k++) {
+					double temp = augmented.get(j, k);
+					augmented.set(augmented.get(best, k), j, k);
+					augmented.set(temp, best, k);
+				}
+			}
+
+			double pivot = augmented.get(j, j);
+			if (Math.abs(pivot) <= error) {
+				continue;
+			}
+			for (int i = j + 1; i < rows; i++) {
+				double multiplier = augmented.get(i, j) / pivot;
+				if (multiplier == 0) {
+					continue;
+				}
+				augmented.set(0, i, j);
+				for (int k = j + 1; k < width; k++) {
+					augmented.set(augmented.get(i, k) - multiplier * augmented.get(j, k), i, k);
 				}
 			}
 		}
@@ -66,10 +84,8 @@ public class LinearSolver {
 
 		for (int i = components - 1; i >= 0; i--) {
 			double rightSide = Ab.get(i, Ab.columns() - 1);
-			for (int j = 0; j < Ab.columns() - 1; j++) {
-				if (j != i) {
-					rightSide -= solution[j][0] * Ab.get(i, j);
-				}
+			for (int j = i + 1; j < Ab.columns() - 1; j++) {
+				rightSide -= solution[j][0] * Ab.get(i, j);
 			}
 
 			if (Math.abs(Ab.get(i, i)) >= error) {
@@ -79,14 +95,7 @@ public class LinearSolver {
 				return null;
 			}
 		}
-		Matrix response = new Matrix(solution);
-
-		// undo row swaps from upperTriangular
-		for (int row : swaps.keySet()) {
-			response.swapRows(row, swaps.get(row));
-		}
-
-		swaps.clear();
-		return response;
+		// row swaps only reorder equations, so the solution needs no unscrambling
+		return new Matrix(solution);
 	}
-}
\ No newline at end of file
+}
@@ -0,0 +1,414 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads tab-separated numeric data straight out of a memory-mapped file.
+ * Numbers are parsed from the raw bytes into a reused field array, so reading
+ * a line allocates nothing. Files larger than one mapping are read through a
+ * sliding window.
+ *
+ * Typical use is the static read method, or as a cursor:
+ *
+ * <pre>
+ * while (reader.next()) {
+ * 	double x = reader.field(0);
+ * }
+ * </pre>
+ */
+public class MappedDataReader implements Closeable {
+
+	private static final long WINDOW = 1L << 30;
+	private static final int MAX_FAST_DIGITS = 15;
+	private static final double[] POWERS_OF_TEN = new double[23];
+
+	static {
+		POWERS_OF_TEN[0] = 1;
+		for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+			POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+		}
+	}
+
+	private final FileChannel channel;
+	private final long end;
+	private MappedByteBuffer buffer;
+	// file offset of the first byte in buffer
+	private long bufferStart;
+	// file offset of the next unread byte
+	private long position;
+
+	private double[] fields = new double[16];
+	private int fieldCount;
+	private long lineNumber;
+	private byte[] scratch = new byte[64];
+
+	/**
+	 * Opens a whole file for reading
+	 */
+	public MappedDataReader(String fileName) throws IOException {
+		this(FileChannel.open(Paths.get(fileName), StandardOpenOption.READ), 0, -1);
+	}
+
+	/**
+	 * Reads the lines in [start, end) of an open channel. start must be the
+	 * first byte of a line; a negative end means the end of the file. The
+	 * reader takes ownership of the channel.
+	 */
+	public MappedDataReader(FileChannel channel, long start, long end) throws IOException {
+		this.channel = channel;
+		this.end = end < 0 ? channel.size() : Math.min(end, channel.size());
+		this.position = start;
+		this.bufferStart = start;
+	}
+
+	/**
+	 * Streams every point of a file to the consumer. Lines are x, y or x, y,
+	 * sigma; points with a sigma are passed with weight 1 / sigma^2.
+	 *
+	 * @return the number of points read
+	 */
+	public static long read(String fileName, PointConsumer consumer) {
+		long points = 0;
+		try (MappedDataReader reader = new MappedDataReader(fileName)) {
+			points = reader.readPoints(consumer);
+		} catch (IOException e) {
+			System.out.println("Error: " + e.getMessage());
+		}
+		return points;
+	}
+
+	/**
+	 * Streams every line of a file to the consumer, whatever its width
+	 *
+	 * @return the number of rows read
+	 */
+	public static long readRows(String fileName, RowConsumer consumer) {
+		long rows = 0;
+		try (MappedDataReader reader = new MappedDataReader(fileName)) {
+			rows = reader.readRows(consumer);
+		} catch (IOException e) {
+			System.out.println("Error: " + e.getMessage());
+		}
+		return rows;
+	}
+
+	/**
+	 * Returns the offset of the first line starting at or after offset, or
+	 * the channel size if there is none
+	 */
+	public static long nextLineStart(FileChannel channel, long offset) throws IOException {
+		if (offset <= 0) {
+			return 0;
+		}
+		long size = channel.size();
+		ByteBuffer probe = ByteBuffer.allocate(4096);
+		long at = offset - 1;
+		while (at < size) {
+			probe.clear();
+			int read = channel.read(probe, at);
+			if (read <= 0) {
+				break;
+			}
+			for (int i = 0; i < read; i++) {
+				if (probe.get(i) == '\n') {
+					return at + i + 1;
+				}
+			}
+			at += read;
+		}
+		return size;
+	}
+
+	/**
+	 * Streams the remaining x, y and x, y, sigma lines to the consumer
+	 *
+	 * @return the number of points read
+	 */
+	public long readPoints(PointConsumer consumer) throws IOException {
+		long points = 0;
+		while (next()) {
+			if (fieldCount == 2) {
+				consumer.accept(fields[0], fields[1]);
+			} else if (fieldCount == 3) {
+				double weight = PointConsumer.weightOf(fields[2]);
+				if (Double.isNaN(weight)) {
+					System.out.println("Error: Sigma must be positive (line " + lineNumber + ")");
+					continue;
+				}
+				consumer.accept(fields[0], fields[1], weight);
+			} else {
+				System.out.println("Error: Not 2D Vector! (line " + lineNumber + ")");
+				continue;
+			}
+			points++;
+		}
+		return points;
+	}
+
+	/**
+	 * Streams the remaining lines to the consumer
+	 *
+	 * @return the number of rows read
+	 */
+	public long readRows(RowConsumer consumer) throws IOException {
+		long rows = 0;
+		while (next()) {
+			consumer.accept(fields, fieldCount);
+			rows++;
+		}
+		return rows;
+	}
+
+	/**
+	 * Advances to the next line with data. Blank lines are skipped, and
+	 * malformed lines are reported and skipped.
+	 *
+	 * @return false once the end of the range is reached
+	 */
+	public boolean next() throws IOException {
+		while (position < end) {
+			long lineEnd = findLineEnd();
+			long lineStart = position;
+			position = lineEnd + 1;
+			lineNumber++;
+
+			int from = (int) (lineStart - bufferStart);
+			int to = (int) (lineEnd - bufferStart);
+			if (to > from && buffer.get(to - 1) == '\r') {
+				to--;
+			}
+			if (to == from) {
+				continue;
+			}
+			if (parseLine(from, to)) {
+				return true;
+			}
+			System.out.println("Error: Bad number on line " + lineNumber);
+		}
+		return false;
+	}
+
+	/**
+	 * Returns the number of fields on the current line
+	 */
+	public int fieldCount() {
+		return fieldCount;
+	}
+
+	/**
+	 * Returns a field of the current line
+	 */
+	public double field(int index) {
+		return fields[index];
+	}
+
+	/**
+	 * Returns the 1-based number of the current line within the range
+	 */
+	public long lineNumber() {
+		return lineNumber;
+	}
+
+	/**
+	 * Returns the file offset of the next unread line
+	 */
+	public long position() {
+		return Math.min(position, end);
+	}
+
+	@Override
+	public void close() throws IOException {
+		buffer = null;
+		channel.close();
+	}
+
+	/**
+	 * Finds the newline ending the line at position, remapping the window if
+	 * the line runs past it. Returns end if the last line has no newline.
+	 */
+	private long findLineEnd() throws IOException {
+		if (buffer == null) {
+			map(position);
+		}
+		while (true) {
+			int limit = buffer.limit();
+			for (int i = (int) (position - bufferStart); i < limit; i++) {
+				if (buffer.get(i) == '\n') {
+					return bufferStart + i;
+				}
+			}
+			long mappedEnd = bufferStart + limit;
+			if (mappedEnd >= end) {
+				return end;
+			}
+			if (position == bufferStart) {
+				throw new IOException("Line longer than " + WINDOW + " bytes at offset " + position);
+			}
+			map(position);
+		}
+	}
+
+	private void map(long from) throws IOException {
+		long length = Math.min(WINDOW, end - from);
+		buffer = channel.map(FileChannel.MapMode.READ_ONLY, from, length);
+		bufferStart = from;
+	}
+
+	/**
+	 * Splits buffer[from, to) on tabs and parses each field
+	 */
+	private boolean parseLine(int from, int to) {
+		fieldCount = 0;
+		int start = from;
+		for (int i = from; i <= to; i++) {
+			if (i == to || buffer.get(i) == '\t') {
+				if (fieldCount == fields.length) {
+					double[] grown = new double[fields.length * 2];
+					System.arraycopy(fields, 0, grown, 0, fields.length);
+					fields = grown;
+				}
+				double value = parseDouble(start, i);
+				if (Double.isNaN(value) && !isNaNLiteral(start, i)) {
+					return false;
+				}
+				fields[fieldCount++] = value;
+				start = i + 1;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Parses a decimal number from buffer[from, to). Up to 15 significant
+	 * digits with a small exponent are converted exactly with one multiply or
+	 * divide; anything else falls back to Double.parseDouble. Returns NaN if
+	 * the text is not a number.
+	 */
+	private double parseDouble(int from, int to) {
+		int i = from;
+		while (i < to && buffer.get(i) == ' ') {
+			i++;
+		}
+		while (to > i && buffer.get(to - 1) == ' ') {
+			to--;
+		}
+		if (i == to) {
+			return Double.NaN;
+		}
+
+		boolean negative = false;
+		byte c = buffer.get(i);
+		if (c == '-' || c == '+') {
+			negative = c == '-';
+			i++;
+		}
+
+		long mantissa = 0;
+		int digits = 0;
+		int exponent = 0;
+		boolean seenDigit = false;
+		boolean seenPoint = false;
+		for (; i < to; i++) {
+			c = buffer.get(i);
+			if (c >= '0' && c <= '9') {
+				seenDigit = true;
+				if (mantissa == 0 && c == '0') {
+					// leading zeros are not significant
+					if (seenPoint) {
+						exponent--;
+					}
+					continue;
+				}
+				if (digits >= MAX_FAST_DIGITS) {
+					return parseSlow(from, to);
+				}
+				mantissa = mantissa * 10 + (c - '0');
+				digits++;
+				if (seenPoint) {
+					exponent--;
+				}
+			} else if (c == '.' && !seenPoint) {
+				seenPoint = true;
+			} else {
+				break;
+			}
+		}
+		if (!seenDigit) {
+			return parseSlow(from, to);
+		}
+
+		if (i < to) {
+			if (c != 'e' && c != 'E') {
+				return parseSlow(from, to);
+			}
+			i++;
+			boolean negativeExponent = false;
+			if (i < to && (buffer.get(i) == '-' || buffer.get(i) == '+')) {
+				negativeExponent = buffer.get(i) == '-';
+				i++;
+			}
+			if (i == to) {
+				return Double.NaN;
+			}
+			int written = 0;
+			for (; i < to; i++) {
+				c = buffer.get(i);
+				if (c < '0' || c > '9' || written > 1000) {
+					return parseSlow(from, to);
+				}
+				written = written * 10 + (c - '0');
+			}
+			exponent += negativeExponent ? -written : written;
+		}
+
+		double value;
+		if (mantissa == 0) {
+			value = 0;
+		} else if (exponent >= 0 && exponent < POWERS_OF_TEN.length) {
+			value = mantissa * POWERS_OF_TEN[exponent];
+		} else if (exponent < 0 && -exponent < POWERS_OF_TEN.length) {
+			value = mantissa / POWERS_OF_TEN[-exponent];
+		} else {
+			return parseSlow(from, to);
+		}
+		return negative ? -value : value;
+	}
+
+	private double parseSlow(int from, int to) {
+		int length = to - from;
+		if (scratch.length < length) {
+			scratch = new byte[length];
+		}
+		for (int i = 0; i < length; i++) {
+			scratch[i] = buffer.get(from + i);
+		}
+		try {
+			return Double.parseDouble(new String(scratch, 0, length, StandardCharsets.ISO_8859_1));
+		} catch (NumberFormatException e) {
+			return Double.NaN;
+		}
+	}
+
+	/**
+	 * Returns true if the field is exactly NaN with an optional sign and
+	 * surrounding whitespace, the only spelling Double.parseDouble reads as NaN
+	 */
+	private boolean isNaNLiteral(int from, int to) {
+		while (from < to && buffer.get(from) <= ' ') {
+			from++;
+		}
+		while (to > from && buffer.get(to - 1) <= ' ') {
+			to--;
+		}
+		if (from < to && (buffer.get(from) == '-' || buffer.get(from) == '+')) {
+			from++;
+		}
+		return to - from == 3 && buffer.get(from) == 'N' && buffer.get(from + 1) == 'a'
+				&& buffer.get(from + 2) == 'N';
+	}
+}
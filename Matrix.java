@@ -9,7 +9,16 @@ import java.text.DecimalFormat;
 // TODO make everything exception - safe
 public class Matrix {
 
-	private double[][] matrix;
+	// square tile edge for the blocked kernels, sized to keep tiles in L1/L2
+	private static final int BLOCK = 64;
+
+	// entry (i, j) lives at data[offset + i * rowStride + j * columnStride].
+	// Matrices built by the constructors are row-major and own their data;
+	// views share the data of the matrix they were taken from.
+	private double[] data;
+	private int offset;
+	private int rowStride;
+	private int columnStride;
 	private int rows;
 	private int columns;
 
@@ -18,18 +27,29 @@ public class Matrix {
 	 * Constructor - unknown values
 	 */
 	public Matrix(int rows, int columns) {
-		this.matrix = new double[rows][columns];
-		this.rows = matrix.length;
-		this.columns = matrix[0].length;
+		this(new double[rows * columns], 0, columns, 1, rows, columns);
 	}
 
 	/**
 	 * Constructor - known values
 	 */
 	public Matrix(double[][] matrix) {
-		this.matrix = matrix;
-		this.rows = matrix.length;
-		this.columns = matrix[0].length;
+		this(matrix.length, matrix[0].length);
+		for (int i = 0; i < rows; i++) {
+			System.arraycopy(matrix[i], 0, data, i * columns, columns);
+		}
+	}
+
+	/**
+	 * Constructor - view onto existing storage
+	 */
+	private Matrix(double[] data, int offset, int rowStride, int columnStride, int rows, int columns) {
+		this.data = data;
+		this.offset = offset;
+		this.rowStride = rowStride;
+		this.columnStride = columnStride;
+		this.rows = rows;
+		this.columns = columns;
 	}
 
 	/**
@@ -50,14 +70,80 @@ public class Matrix {
 	 * Set a value at a position
 	 */
 	public void set(double value, int row, int column) {
-		matrix[row][column] = value;
+		data[offset + row * rowStride + column * columnStride] = value;
 	}
 
 	/**
 	 * get the value at a position
 	 */
 	public double get(int row, int column) {
-		return matrix[row][column];
+		return data[offset + row * rowStride + column * columnStride];
+	}
+
+	/**
+	 * Returns a view of a block of this matrix. Nothing is copied; changes to
+	 * either matrix show up in the other.
+	 */
+	public Matrix subMatrix(int row, int column, int rows, int columns) {
+		if (row < 0 || column < 0 || row + rows > this.rows || column + columns > this.columns) {
+			throw new IndexOutOfBoundsException("Block " + rows + "x" + columns + " at (" + row + ", " + column
+					+ ") is outside a " + this.rows + "x" + this.columns + " matrix");
+		}
+		return new Matrix(data, offset + row * rowStride + column * columnStride, rowStride, columnStride, rows,
+				columns);
+	}
+
+	/**
+	 * Returns a 1 x n view of a row
+	 */
+	public Matrix row(int row) {
+		return subMatrix(row, 0, 1, columns);
+	}
+
+	/**
+	 * Returns an n x 1 view of a column
+	 */
+	public Matrix column(int column) {
+		return subMatrix(0, column, rows, 1);
+	}
+
+	/**
+	 * Returns an independent copy of this matrix in row-major order
+	 */
+	public Matrix copy() {
+		Matrix response = new Matrix(rows, columns);
+		for (int i = 0; i < rows; i++) {
+			copyRow(i, response.data, i * columns);
+		}
+		return response;
+	}
+
+	/**
+	 * True if each row is stored contiguously with rows packed back to back
+	 */
+	private boolean isPacked() {
+		return columnStride == 1 && (rowStride == columns || rows == 1);
+	}
+
+	/**
+	 * Returns this matrix if it is packed, otherwise a packed copy
+	 */
+	private Matrix packed() {
+		return isPacked() ? this : copy();
+	}
+
+	/**
+	 * Copies one row into a destination array
+	 */
+	private void copyRow(int row, double[] to, int at) {
+		int from = offset + row * rowStride;
+		if (columnStride == 1) {
+			System.arraycopy(data, from, to, at, columns);
+		} else {
+			for (int j = 0; j < columns; j++) {
+				to[at + j] = data[from + j * columnStride];
+			}
+		}
 	}
 	
 	/**
@@ -95,18 +181,108 @@ public class Matrix {
 	}
 
 	/**
-	 * Matrix multiplication
+	 * Matrix multiplication. Works tile by tile in i-k-j order so the inner
+	 * loop streams along rows of both the product and the right factor.
 	 */
 	public Matrix multiply(Matrix other) {
+		if (this.columns != other.rows) {
+			throw new IllegalArgumentException("Cannot multiply " + rows + "x" + columns + " by " + other.rows + "x"
+					+ other.columns);
+		}
+		Matrix left = this.packed();
+		Matrix right = other.packed();
 		Matrix product = new Matrix(this.rows, other.columns);
+		double[] a = left.data;
+		double[] b = right.data;
+		double[] c = product.data;
+		int aStart = left.offset;
+		int bStart = right.offset;
+		int inner = this.columns;
+		int width = other.columns;
 
-		for (int i = 0; i < this.rows; i++) {
-			for (int j = 0; j < other.columns(); j++) {
-				double value = 0;
-				for (int k = 0; k < this.columns; k++) {
-					value += this.get(i, k) * other.get(k, j);
+		for (int ii = 0; ii < rows; ii += BLOCK) {
+			int iEnd = Math.min(ii + BLOCK, rows);
+			for (int kk = 0; kk < inner; kk += BLOCK) {
+				int kEnd = Math.min(kk + BLOCK, inner);
+				for (int jj = 0; jj < width; jj += BLOCK) {
+					int jEnd = Math.min(jj + BLOCK, width);
+					for (int i = ii; i < iEnd; i++) {
+						int cRow = i * width;
+						int aRow = aStart + i * inner;
+						for (int k = kk; k < kEnd; k++) {
+							double aik = a[aRow + k];
+							int bRow = bStart + k * width;
+							for (int j = jj; j < jEnd; j++) {
+								c[cRow + j] += aik * b[bRow + j];
+							}
+						}
+					}
+				}
+			}
+		}
+		return product;
+	}
+
+	/**
+	 * Returns (this^T)(this) without forming the transpose. Rows are read
+	 * once, in order, and only the upper triangle is accumulated before being
+	 * mirrored, so a tall design matrix is streamed a single time.
+	 */
+	public Matrix gram() {
+		Matrix source = this.packed();
+		Matrix product = new Matrix(this.columns, this.columns);
+		double[] a = source.data;
+		double[] c = product.data;
+		int n = this.columns;
+
+		for (int r = 0; r < rows; r++) {
+			int aRow = source.offset + r * n;
+			for (int i = 0; i < n; i++) {
+				double ari = a[aRow + i];
+				int cRow = i * n;
+				for (int j = i; j < n; j++) {
+					c[cRow + j] += ari * a[aRow + j];
+				}
+			}
+		}
+		for (int i = 0; i < n; i++) {
+			for (int j = 0; j < i; j++) {
+				c[i * n + j] = c[j * n + i];
+			}
+		}
+		return product;
+	}
+
+	/**
+	 * Returns (this^T)(other) without forming the transpose, reading both
+	 * matrices row by row in a single pass
+	 */
+	public Matrix transposeMultiply(Matrix other) {
+		if (this.rows != other.rows) {
+			throw new IllegalArgumentException("Cannot multiply transpose of " + rows + "x" + columns + " by "
+					+ other.rows + "x" + other.columns);
+		}
+		if (other == this) {
+			return gram();
+		}
+		Matrix left = this.packed();
+		Matrix right = other.packed();
+		Matrix product = new Matrix(this.columns, other.columns);
+		double[] a = left.data;
+		double[] b = right.data;
+		double[] c = product.data;
+		int n = this.columns;
+		int width = other.columns;
+
+		for (int r = 0; r < rows; r++) {
+			int aRow = left.offset + r * n;
+			int bRow = right.offset + r * width;
+			for (int i = 0; i < n; i++) {
+				double ari = a[aRow + i];
+				int cRow = i * width;
+				for (int j = 0; j < width; j++) {
+					c[cRow + j] += ari * b[bRow + j];
 				}
-				product.set(value, i, j);
 			}
 		}
 		return product;
@@ -130,10 +306,20 @@ public class Matrix {
 	 * Matrix transpose
 	 */
 	public Matrix transpose() {
+		Matrix source = this.packed();
 		Matrix response = new Matrix(this.columns, this.rows);
-		for (int i = 0; i < response.rows(); i++) {
-			for (int j = 0; j < response.columns(); j++) {
-				response.set(this.get(j, i), i, j);
+		double[] from = source.data;
+		double[] to = response.data;
+		// copy tile by tile so neither side strides through all of memory
+		for (int ii = 0; ii < rows; ii += BLOCK) {
+			int iEnd = Math.min(ii + BLOCK, rows);
+			for (int jj = 0; jj < columns; jj += BLOCK) {
+				int jEnd = Math.min(jj + BLOCK, columns);
+				for (int i = ii; i < iEnd; i++) {
+					for (int j = jj; j < jEnd; j++) {
+						to[j * rows + i] = from[source.offset + i * columns + j];
+					}
+				}
 			}
 		}
 		return response;
@@ -144,34 +330,34 @@ public class Matrix {
 	 */
 	public Matrix augment(Matrix other) {
 		Matrix newMatrix = new Matrix(this.rows, this.columns + other.columns);
+		int width = newMatrix.columns;
 
 		for (int i = 0; i < this.rows(); i++) {
-			for (int j = 0; j < this.columns(); j++) {
-				newMatrix.set(this.get(i, j), i, j);
-			}
+			this.copyRow(i, newMatrix.data, i * width);
 		}
 
 		for (int i = 0; i < other.rows(); i++) {
-			for (int j = 0; j < other.columns(); j++) {
-				newMatrix.set(other.get(i, j), i, j + this.columns);
-			}
+			other.copyRow(i, newMatrix.data, i * width + this.columns);
 		}
 		return newMatrix;
 	}
 
 	/**
-	 * Remove a row from a matrix
+	 * Remove a row from a matrix. Returns a new matrix; when this one is
+	 * packed the rows above and below are each moved with one arraycopy.
 	 */
 	public Matrix removeRow(int row) {
-		Matrix oldMatrix = this.swapRows(row, 0);
 		Matrix newMatrix = new Matrix(this.rows() - 1, this.columns());
-		for (int i = 1; i < oldMatrix.rows(); i++) {
-			for (int j = 0; j < oldMatrix.columns(); j++) {
-				newMatrix.set(oldMatrix.get(i, j), i - 1, j);
-			}
+		if (isPacked()) {
+			System.arraycopy(data, offset, newMatrix.data, 0, row * columns);
+			System.arraycopy(data, offset + (row + 1) * columns, newMatrix.data, row * columns,
+					(rows - row - 1) * columns);
+			return newMatrix;
 		}
-		if (row != 0) {
-			newMatrix = newMatrix.swapRows(row - 1, 0);
+		for (int i = 0, to = 0; i < rows; i++) {
+			if (i != row) {
+				copyRow(i, newMatrix.data, to++ * columns);
+			}
 		}
 		return newMatrix;
 	}
@@ -180,15 +366,22 @@ public class Matrix {
 	 * Remove a column from a matrix
 	 */
 	public Matrix removeColumn(int column) {
-		Matrix oldMatrix = this.swapCols(column, 0);
 		Matrix newMatrix = new Matrix(this.rows(), this.columns() - 1);
-		for (int i = 0; i < oldMatrix.rows(); i++) {
-			for (int j = 1; j < oldMatrix.columns(); j++) {
-				newMatrix.set(oldMatrix.get(i, j), i, j - 1);
+		int width = newMatrix.columns;
+		if (columnStride == 1) {
+			for (int i = 0; i < rows; i++) {
+				int from = offset + i * rowStride;
+				System.arraycopy(data, from, newMatrix.data, i * width, column);
+				System.arraycopy(data, from + column + 1, newMatrix.data, i * width + column, width - column);
 			}
+			return newMatrix;
 		}
-		if (column != 0) {
-			newMatrix = newMatrix.swapCols(0, column - 1);
+		for (int i = 0; i < rows; i++) {
+			for (int j = 0, to = 0; j < columns; j++) {
+				if (j != column) {
+					newMatrix.data[i * width + to++] = get(i, j);
+				}
+			}
 		}
 		return newMatrix;
 	}
@@ -241,19 +434,39 @@ public class Matrix {
 	}
 
 	/**
-	 * Swaps two rows in a matrix
+	 * Swaps two rows of this matrix in place
+	 * 
+	 * @return this matrix, for chaining
 	 */
 	public Matrix swapRows(int row1, int row2) {
-		Matrix permutationMatrix = permutation(this.rows, row1, row2, false);
-		return permutationMatrix.multiply(this);
+		if (row1 != row2) {
+			int a = offset + row1 * rowStride;
+			int b = offset + row2 * rowStride;
+			for (int j = 0; j < columns; j++, a += columnStride, b += columnStride) {
+				double temp = data[a];
+				data[a] = data[b];
+				data[b] = temp;
+			}
+		}
+		return this;
 	}
 
 	/**
-	 * Swaps two columns in a matrix
+	 * Swaps two columns of this matrix in place
+	 * 
+	 * @return this matrix, for chaining
 	 */
 	public Matrix swapCols(int col1, int col2) {
-		Matrix permutationMatrix = permutation(this.columns, col1, col2, true);
-		return permutationMatrix.multiply(this);
+		if (col1 != col2) {
+			int a = offset + col1 * columnStride;
+			int b = offset + col2 * columnStride;
+			for (int i = 0; i < rows; i++, a += rowStride, b += rowStride) {
+				double temp = data[a];
+				data[a] = data[b];
+				data[b] = temp;
+			}
+		}
+		return this;
 	}
 
 	/**
@@ -268,8 +481,8 @@ public class Matrix {
 
 	public String toString() {
 		String output = "";
-		for (int i = 0; i < this.matrix.length; i++) {
-			for (int j = 0; j < this.matrix[0].length; j++) {
+		for (int i = 0; i < this.rows; i++) {
+			for (int j = 0; j < this.columns; j++) {
 				output += form.format(this.get(i, j)) + "\t";
 			}
 			output += "\n";
@@ -0,0 +1,211 @@
+import java.util.Arrays;
+
+/**
+ * Streaming accumulator for the normal equations (X^T X) b = X^T y of a
+ * linear model with any number of features. Rows of the design matrix are
+ * folded in one at a time, so the design matrix itself is never stored.
+ */
+public class NormalEquations {
+
+	private final int size;
+	// X^T X, row-major; only the upper triangle is accumulated
+	private final double[] gram;
+	// X^T y
+	private final double[] moment;
+	private long count;
+	private double weight;
+	private double sumYY;
+
+	/**
+	 * Constructor - empty system for a model with the given number of
+	 * features
+	 */
+	public NormalEquations(int size) {
+		this.size = size;
+		this.gram = new double[size * size];
+		this.moment = new double[size];
+	}
+
+	/**
+	 * Adds one row of the design matrix and its observed value
+	 */
+	public void add(double[] features, double y) {
+		add(features, y, 1);
+	}
+
+	/**
+	 * Adds one row of the design matrix that counts w times. A row of zero
+	 * weight is skipped and not counted, as in RegressionAccumulator.
+	 */
+	public void add(double[] features, double y, double w) {
+		if (w == 0) {
+			return;
+		}
+		accumulate(features, y, w);
+		count++;
+	}
+
+	/**
+	 * Takes back a row that was added earlier with unit weight
+	 */
+	public void remove(double[] features, double y) {
+		accumulate(features, y, -1);
+		count--;
+	}
+
+	private void accumulate(double[] features, double y, double w) {
+		for (int i = 0; i < size; i++) {
+			double wxi = w * features[i];
+			if (wxi == 0) {
+				continue;
+			}
+			int row = i * size;
+			for (int j = i; j < size; j++) {
+				gram[row + j] += wxi * features[j];
+			}
+			moment[i] += wxi * y;
+		}
+		weight += w;
+		sumYY += w * y * y;
+	}
+
+	/**
+	 * Folds another system over the same features into this one
+	 */
+	public void merge(NormalEquations other) {
+		checkSize(other);
+		for (int i = 0; i < gram.length; i++) {
+			gram[i] += other.gram[i];
+		}
+		for (int i = 0; i < size; i++) {
+			moment[i] += other.moment[i];
+		}
+		count += other.count;
+		weight += other.weight;
+		sumYY += other.sumYY;
+	}
+
+	/**
+	 * Takes back the rows of another system that were merged into, or added
+	 * to, this one - e.g. to get the training set of a fold from the total
+	 */
+	public void subtract(NormalEquations other) {
+		checkSize(other);
+		for (int i = 0; i < gram.length; i++) {
+			gram[i] -= other.gram[i];
+		}
+		for (int i = 0; i < size; i++) {
+			moment[i] -= other.moment[i];
+		}
+		count -= other.count;
+		weight -= other.weight;
+		sumYY -= other.sumYY;
+	}
+
+	/**
+	 * Makes this system a copy of another over the same features
+	 */
+	public void set(NormalEquations other) {
+		checkSize(other);
+		System.arraycopy(other.gram, 0, gram, 0, gram.length);
+		System.arraycopy(other.moment, 0, moment, 0, size);
+		count = other.count;
+		weight = other.weight;
+		sumYY = other.sumYY;
+	}
+
+	private void checkSize(NormalEquations other) {
+		if (other.size != size) {
+			throw new IllegalArgumentException("Cannot combine " + other.size + " features with " + size);
+		}
+	}
+
+	/**
+	 * Forgets every row, keeping the buffers
+	 */
+	public void clear() {
+		Arrays.fill(gram, 0);
+		Arrays.fill(moment, 0);
+		count = 0;
+		weight = 0;
+		sumYY = 0;
+	}
+
+	/**
+	 * Returns the number of features
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the number of rows added
+	 */
+	public long count() {
+		return count;
+	}
+
+	/**
+	 * Returns the total weight of the rows (the count, if unweighted)
+	 */
+	public double weight() {
+		return weight;
+	}
+
+	/**
+	 * Returns the weighted sum of y squared
+	 */
+	public double sumYY() {
+		return sumYY;
+	}
+
+	/**
+	 * Returns entry (i, j) of X^T X
+	 */
+	public double gram(int i, int j) {
+		return i <= j ? gram[i * size + j] : gram[j * size + i];
+	}
+
+	/**
+	 * Returns entry i of X^T y
+	 */
+	public double moment(int i) {
+		return moment[i];
+	}
+
+	/**
+	 * Returns X^T X as a full symmetric matrix
+	 */
+	public Matrix normalMatrix() {
+		Matrix response = new Matrix(size, size);
+		for (int i = 0; i < size; i++) {
+			for (int j = i; j < size; j++) {
+				double value = gram[i * size + j];
+				response.set(value, i, j);
+				response.set(value, j, i);
+			}
+		}
+		return response;
+	}
+
+	/**
+	 * Returns X^T y as a column
+	 */
+	public Matrix rightSide() {
+		Matrix response = new Matrix(size, 1);
+		for (int i = 0; i < size; i++) {
+			response.set(moment[i], i, 0);
+		}
+		return response;
+	}
+
+	/**
+	 * Solves for the coefficients with LinearSolver
+	 *
+	 * @return a column of coefficients in feature order, or null if the
+	 *         system is singular
+	 */
+	public Matrix solve() {
+		return new LinearSolver(normalMatrix(), rightSide()).getSolution();
+	}
+}
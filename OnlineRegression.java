@@ -0,0 +1,248 @@
+import java.util.Arrays;
+
+/**
+ * Least-squares fit that is kept current as points arrive and leave.
+ *
+ * Once enough points are in to make X^T X invertible, its inverse P is
+ * factored once and from then on every add or remove is a Sherman-Morrison
+ * rank-one update of P and of the coefficients (recursive least squares),
+ * costing O(k^2) for k features instead of a refit over all N points. The
+ * normal equations are kept alongside so P can be rebuilt exactly from time
+ * to time, which keeps rounding errors from piling up on endless feeds.
+ * Until the fit is determined, the system is refactored on every change, so
+ * the coefficients appear on the first point that pins them down. Each time
+ * a refactorization finds the system singular, the wait before the next
+ * attempt doubles, so a feed that starts on degenerate points stays cheap.
+ */
+public class OnlineRegression {
+
+	// rank-one updates between exact refactorizations
+	private static final int REFACTOR_INTERVAL = 100000;
+	// smallest 1 +/- f^T P f accepted before a removal is treated as singular
+	private static final double error = 1E-12;
+	// 1-norm condition number above which X^T X is treated as singular;
+	// rounding can leave a collinear system with tiny positive pivots
+	private static final double MAX_CONDITION = 1E14;
+
+	private final DesignMatrixBuilder design;
+	private final int size;
+	private final NormalEquations normal;
+	// (X^T X)^-1, row-major
+	private final double[] inverse;
+	private final double[] coefficients;
+	private final CholeskySolver factor;
+	private boolean ready;
+	private int updates;
+	// changes since the last refactorization found the system singular
+	private int pending;
+	// changes to wait before trying again; 0 until a refactorization fails
+	private int backoff;
+
+	// scratch, reused by every update
+	private final double[] inputs;
+	private final double[] features;
+	private final double[] projected;
+
+	/**
+	 * Constructor - fits y = m*x + b
+	 */
+	public OnlineRegression() {
+		this(new DesignMatrixBuilder(1));
+	}
+
+	/**
+	 * Constructor - fits any design
+	 */
+	public OnlineRegression(DesignMatrixBuilder design) {
+		this.design = design;
+		this.size = design.features();
+		this.normal = design.newNormalEquations();
+		this.inverse = new double[size * size];
+		this.coefficients = new double[size];
+		this.factor = new CholeskySolver(size);
+		this.inputs = new double[design.inputs()];
+		this.features = new double[size];
+		this.projected = new double[size];
+	}
+
+	/**
+	 * Adds a point to a single-input fit
+	 */
+	public void add(Vector3 point) {
+		add(point.getX(), point.getY());
+	}
+
+	/**
+	 * Adds a point to a single-input fit
+	 */
+	public void add(double x, double y) {
+		inputs[0] = x;
+		add(inputs, y);
+	}
+
+	/**
+	 * Adds an observation
+	 *
+	 * @param values - one value per input column
+	 */
+	public void add(double[] values, double y) {
+		design.expand(values, 0, features);
+		normal.add(features, y);
+		update(y, 1);
+	}
+
+	/**
+	 * Removes a point that was added to a single-input fit
+	 */
+	public void remove(Vector3 point) {
+		remove(point.getX(), point.getY());
+	}
+
+	/**
+	 * Removes a point that was added to a single-input fit
+	 */
+	public void remove(double x, double y) {
+		inputs[0] = x;
+		remove(inputs, y);
+	}
+
+	/**
+	 * Removes an observation that was added earlier
+	 */
+	public void remove(double[] values, double y) {
+		design.expand(values, 0, features);
+		normal.remove(features, y);
+		update(y, -1);
+	}
+
+	/**
+	 * Returns the number of observations in the fit
+	 */
+	public long count() {
+		return normal.count();
+	}
+
+	/**
+	 * Returns true once the observations determine the coefficients
+	 */
+	public boolean isReady() {
+		return ready;
+	}
+
+	/**
+	 * Returns one coefficient, in DesignMatrixBuilder feature order, or NaN
+	 * if the fit is not determined yet
+	 */
+	public double coefficient(int index) {
+		return ready ? coefficients[index] : Double.NaN;
+	}
+
+	/**
+	 * Returns the coefficients as a column, or null if the fit is not
+	 * determined yet
+	 */
+	public Matrix coefficients() {
+		if (!ready) {
+			return null;
+		}
+		Matrix response = new Matrix(size, 1);
+		for (int i = 0; i < size; i++) {
+			response.set(coefficients[i], i, 0);
+		}
+		return response;
+	}
+
+	/**
+	 * Applies the rank-one change from the row in features, with sign +1 for
+	 * an addition and -1 for a removal
+	 */
+	private void update(double y, int sign) {
+		if (!ready) {
+			if (normal.count() >= size && ++pending >= backoff) {
+				refactor();
+			}
+			return;
+		}
+		if (++updates >= REFACTOR_INTERVAL) {
+			refactor();
+			return;
+		}
+
+		// projected = P f, and denominator = 1 +/- f^T P f
+		double denominator = 0;
+		for (int i = 0; i < size; i++) {
+			int row = i * size;
+			double value = 0;
+			for (int j = 0; j < size; j++) {
+				value += inverse[row + j] * features[j];
+			}
+			projected[i] = value;
+			denominator += features[i] * value;
+		}
+		denominator = 1 + sign * denominator;
+		if (denominator <= error) {
+			// the update would make X^T X singular or nearly so
+			refactor();
+			return;
+		}
+
+		double residual = y;
+		for (int i = 0; i < size; i++) {
+			residual -= features[i] * coefficients[i];
+		}
+
+		double gain = sign * residual / denominator;
+		double scale = sign / denominator;
+		for (int i = 0; i < size; i++) {
+			coefficients[i] += projected[i] * gain;
+			int row = i * size;
+			double pi = projected[i] * scale;
+			for (int j = 0; j < size; j++) {
+				inverse[row + j] -= pi * projected[j];
+			}
+		}
+	}
+
+	/**
+	 * Rebuilds P and the coefficients from the normal equations, reusing the
+	 * factor's buffers. A singular system doubles the wait before the next
+	 * attempt.
+	 */
+	private void refactor() {
+		updates = 0;
+		pending = 0;
+		ready = normal.count() >= size && factor.factor(normal) && invert();
+		backoff = ready ? 0 : Math.min(Math.max(1, 2 * backoff), REFACTOR_INTERVAL);
+	}
+
+	/**
+	 * Solves for the coefficients and P with the fresh factor
+	 *
+	 * @return false if X^T X is too ill-conditioned to trust
+	 */
+	private boolean invert() {
+		for (int i = 0; i < size; i++) {
+			coefficients[i] = normal.moment(i);
+		}
+		factor.solveInPlace(coefficients);
+
+		// P column by column, solving against the unit vectors
+		double normGram = 0;
+		double normInverse = 0;
+		for (int j = 0; j < size; j++) {
+			Arrays.fill(projected, 0);
+			projected[j] = 1;
+			factor.solveInPlace(projected);
+			double gramColumn = 0;
+			double inverseColumn = 0;
+			for (int i = 0; i < size; i++) {
+				inverse[i * size + j] = projected[i];
+				gramColumn += Math.abs(normal.gram(i, j));
+				inverseColumn += Math.abs(projected[i]);
+			}
+			normGram = Math.max(normGram, gramColumn);
+			normInverse = Math.max(normInverse, inverseColumn);
+		}
+		return normGram * normInverse < MAX_CONDITION;
+	}
+}
@@ -0,0 +1,139 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Fits y = m*x + b to a data file on several cores. The file is cut into
+ * byte ranges that start on line boundaries; each range is parsed into its
+ * own RegressionAccumulator on a fork-join pool and the partial sums are
+ * merged pairwise as the tasks join.
+ *
+ * The merged statistics are the same as a single pass over the file up to
+ * rounding in the merge order. Slope and intercept agree with a
+ * single-threaded LinearSolver fit of the normal equations to a relative
+ * error of about cond(A^T A) * 1E-16, i.e. within 1E-9 for data whose normal
+ * matrix has a condition number below 1E6.
+ */
+public class ParallelRegression {
+
+	// ranges per worker, so that uneven ranges still balance
+	private static final int RANGES_PER_THREAD = 4;
+	private static final long MIN_RANGE_BYTES = 1 << 20;
+
+	private final int parallelism;
+
+	/**
+	 * Constructor - one worker per available core
+	 */
+	public ParallelRegression() {
+		this(Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Constructor - a fixed number of workers
+	 */
+	public ParallelRegression(int parallelism) {
+		this.parallelism = Math.max(1, parallelism);
+	}
+
+	/**
+	 * Reads a two-column data file and returns its merged statistics
+	 */
+	public RegressionAccumulator fit(String fileName) throws IOException {
+		Path path = Paths.get(fileName);
+		long[] boundaries;
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			boundaries = splitLines(channel, parallelism * RANGES_PER_THREAD);
+		}
+
+		ForkJoinPool pool = new ForkJoinPool(parallelism);
+		try {
+			return pool.invoke(new RangeTask(path, boundaries, 0, boundaries.length - 1));
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	/**
+	 * Solves the normal equations of merged statistics with LinearSolver
+	 *
+	 * @return a 2 x 1 matrix holding the slope and the y intercept
+	 */
+	public static Matrix solve(RegressionAccumulator statistics) {
+		LinearSolver solver = new LinearSolver(statistics.normalMatrix(), statistics.normalRightSide());
+		return solver.getSolution();
+	}
+
+	/**
+	 * Cuts a file into at most parts ranges, each starting on a new line.
+	 * Returns the offsets bounding the ranges, first 0 and last the file size.
+	 */
+	static long[] splitLines(FileChannel channel, int parts) throws IOException {
+		long size = channel.size();
+		parts = (int) Math.max(1, Math.min(parts, size / MIN_RANGE_BYTES));
+
+		long[] boundaries = new long[parts + 1];
+		int count = 1;
+		for (int i = 1; i < parts; i++) {
+			long offset = MappedDataReader.nextLineStart(channel, size / parts * i);
+			if (offset > boundaries[count - 1] && offset < size) {
+				boundaries[count++] = offset;
+			}
+		}
+		boundaries[count++] = size;
+
+		long[] response = new long[count];
+		System.arraycopy(boundaries, 0, response, 0, count);
+		return response;
+	}
+
+	private static class RangeTask extends RecursiveTask<RegressionAccumulator> {
+
+		private static final long serialVersionUID = 1L;
+
+		private final Path path;
+		private final long[] boundaries;
+		private final int first;
+		private final int last;
+
+		/**
+		 * Covers the ranges between boundaries[first] and boundaries[last]
+		 */
+		RangeTask(Path path, long[] boundaries, int first, int last) {
+			this.path = path;
+			this.boundaries = boundaries;
+			this.first = first;
+			this.last = last;
+		}
+
+		@Override
+		protected RegressionAccumulator compute() {
+			if (last - first > 1) {
+				int middle = (first + last) >>> 1;
+				RangeTask left = new RangeTask(path, boundaries, first, middle);
+				RangeTask right = new RangeTask(path, boundaries, middle, last);
+				left.fork();
+				RegressionAccumulator response = right.compute();
+				RegressionAccumulator leftResult = left.join();
+				leftResult.merge(response);
+				return leftResult;
+			}
+
+			RegressionAccumulator response = new RegressionAccumulator();
+			try (MappedDataReader reader = new MappedDataReader(
+					FileChannel.open(path, StandardOpenOption.READ), boundaries[first], boundaries[last])) {
+				reader.readPoints(response);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+			return response;
+		}
+	}
+}
@@ -0,0 +1,32 @@
+/**
+ * Receives data points one at a time, so that readers can stream a file
+ * without holding every point in memory
+ */
+public interface PointConsumer {
+
+	/**
+	 * Called once per data point, in file order
+	 */
+	void accept(double x, double y);
+
+	/**
+	 * Called instead of accept(x, y) for points that carry a weight. The
+	 * default ignores the weight; consumers that fit override it.
+	 */
+	default void accept(double x, double y, double w) {
+		accept(x, y);
+	}
+
+	/**
+	 * Converts the uncertainty sigma of a measurement into its weight 1 /
+	 * sigma^2
+	 *
+	 * @return the weight, or NaN if sigma is not positive
+	 */
+	static double weightOf(double sigma) {
+		if (!(sigma > 0)) {
+			return Double.NaN;
+		}
+		return 1 / (sigma * sigma);
+	}
+}
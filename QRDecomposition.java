@@ -0,0 +1,224 @@
+/**
+ * Householder QR decomposition of an m x n matrix (m >= n), for solving
+ * least-squares problems directly on the design matrix. Unlike the normal
+ * equations, which square the condition number of A, QR loses accuracy only
+ * in proportion to cond(A), so it stays reliable on ill-conditioned fits
+ * such as high-degree polynomials.
+ *
+ * The factorization is done in place on a row-major copy of A. Each
+ * reflector is applied to the trailing columns with two sweeps down the
+ * rows, so the inner loops run along contiguous memory.
+ */
+public class QRDecomposition {
+
+	private final int rows;
+	private final int columns;
+	// R above the diagonal, Householder vectors on and below it, row-major
+	private final double[] qr;
+	private final double[] rDiagonal;
+
+	/**
+	 * Constructor - factors a matrix with at least as many rows as columns
+	 */
+	public QRDecomposition(Matrix a) {
+		rows = a.rows();
+		columns = a.columns();
+		if (rows < columns) {
+			throw new IllegalArgumentException("QR needs rows >= columns, was " + rows + "x" + columns);
+		}
+		qr = new double[rows * columns];
+		rDiagonal = new double[columns];
+		for (int i = 0; i < rows; i++) {
+			for (int j = 0; j < columns; j++) {
+				qr[i * columns + j] = a.get(i, j);
+			}
+		}
+		decompose();
+	}
+
+	private void decompose() {
+		int n = columns;
+		double[] dots = new double[n];
+
+		for (int k = 0; k < n; k++) {
+			// norm of column k below the diagonal, scaled against overflow
+			double scale = 0;
+			for (int i = k; i < rows; i++) {
+				scale = Math.max(scale, Math.abs(qr[i * n + k]));
+			}
+			double norm = 0;
+			if (scale > 0) {
+				double sum = 0;
+				for (int i = k; i < rows; i++) {
+					double value = qr[i * n + k] / scale;
+					sum += value * value;
+				}
+				norm = scale * Math.sqrt(sum);
+			}
+
+			if (norm != 0) {
+				if (qr[k * n + k] < 0) {
+					norm = -norm;
+				}
+				for (int i = k; i < rows; i++) {
+					qr[i * n + k] /= norm;
+				}
+				qr[k * n + k] += 1;
+
+				// dots[j] = v . column j, accumulated a row at a time
+				for (int j = k + 1; j < n; j++) {
+					dots[j] = 0;
+				}
+				for (int i = k; i < rows; i++) {
+					int row = i * n;
+					double v = qr[row + k];
+					if (v == 0) {
+						continue;
+					}
+					for (int j = k + 1; j < n; j++) {
+						dots[j] += v * qr[row + j];
+					}
+				}
+				double pivot = qr[k * n + k];
+				for (int j = k + 1; j < n; j++) {
+					dots[j] = -dots[j] / pivot;
+				}
+				for (int i = k; i < rows; i++) {
+					int row = i * n;
+					double v = qr[row + k];
+					if (v == 0) {
+						continue;
+					}
+					for (int j = k + 1; j < n; j++) {
+						qr[row + j] += dots[j] * v;
+					}
+				}
+			}
+			rDiagonal[k] = -norm;
+		}
+	}
+
+	/**
+	 * Returns true if no column of A is (numerically) a combination of the
+	 * others
+	 */
+	public boolean isFullRank() {
+		double largest = 0;
+		for (double value : rDiagonal) {
+			largest = Math.max(largest, Math.abs(value));
+		}
+		double tolerance = largest * Math.max(rows, columns) * Math.ulp(1.0);
+		for (double value : rDiagonal) {
+			if (Math.abs(value) <= tolerance) {
+				return false;
+			}
+		}
+		return largest > 0;
+	}
+
+	/**
+	 * Returns the n x n upper triangular factor R
+	 */
+	public Matrix getR() {
+		Matrix r = new Matrix(columns, columns);
+		for (int i = 0; i < columns; i++) {
+			r.set(rDiagonal[i], i, i);
+			for (int j = i + 1; j < columns; j++) {
+				r.set(qr[i * columns + j], i, j);
+			}
+		}
+		return r;
+	}
+
+	/**
+	 * Finds the x minimizing |Ax - b| for every column of b
+	 *
+	 * @return an n x k solution, or null if A is rank deficient
+	 */
+	public Matrix solve(Matrix rightSide) {
+		if (rightSide.rows() != rows) {
+			throw new IllegalArgumentException("Right side has " + rightSide.rows() + " rows, expected " + rows);
+		}
+		if (!isFullRank()) {
+			return null;
+		}
+		int n = columns;
+		Matrix response = new Matrix(n, rightSide.columns());
+		double[] y = new double[rows];
+
+		for (int c = 0; c < rightSide.columns(); c++) {
+			for (int i = 0; i < rows; i++) {
+				y[i] = rightSide.get(i, c);
+			}
+
+			// y <- Q^T y
+			for (int k = 0; k < n; k++) {
+				double dot = 0;
+				for (int i = k; i < rows; i++) {
+					dot += qr[i * n + k] * y[i];
+				}
+				dot = -dot / qr[k * n + k];
+				for (int i = k; i < rows; i++) {
+					y[i] += dot * qr[i * n + k];
+				}
+			}
+
+			// R x = (Q^T y)[0..n)
+			for (int i = n - 1; i >= 0; i--) {
+				double value = y[i];
+				for (int j = i + 1; j < n; j++) {
+					value -= qr[i * n + j] * y[j];
+				}
+				y[i] = value / rDiagonal[i];
+			}
+			for (int i = 0; i < n; i++) {
+				response.set(y[i], i, c);
+			}
+		}
+		return response;
+	}
+
+	/**
+	 * Estimates the 1-norm condition number of R, which is that of A up to a
+	 * modest factor. Infinite if A is rank deficient.
+	 */
+	public double conditionEstimate() {
+		if (!isFullRank()) {
+			return Double.POSITIVE_INFINITY;
+		}
+		int n = columns;
+		double norm1 = 0;
+		for (int j = 0; j < n; j++) {
+			double column = Math.abs(rDiagonal[j]);
+			for (int i = 0; i < j; i++) {
+				column += Math.abs(qr[i * n + j]);
+			}
+			norm1 = Math.max(norm1, column);
+		}
+		return norm1 * ConditionEstimator.inverseNorm1(n, this::solveR);
+	}
+
+	/**
+	 * Solves R x = b, or R^T x = b, in place
+	 */
+	private void solveR(double[] x, boolean transpose) {
+		int n = columns;
+		if (transpose) {
+			for (int i = 0; i < n; i++) {
+				double value = x[i];
+				for (int k = 0; k < i; k++) {
+					value -= qr[k * n + i] * x[k];
+				}
+				x[i] = value / rDiagonal[i];
+			}
+		} else {
+			for (int i = n - 1; i >= 0; i--) {
+				double value = x[i];
+				for (int k = i + 1; k < n; k++) {
+					value -= qr[i * n + k] * x[k];
+				}
+				x[i] = value / rDiagonal[i];
+			}
+		}
+	}
+}
@@ -0,0 +1,315 @@
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Running sufficient statistics for fitting y = m*x + b. Points are folded in
+ * one at a time, so a fit over any number of points takes constant memory.
+ * 
+ * Means and co-moments are updated with Welford's method rather than keeping
+ * raw sums, which keeps the slope accurate when x or y sit far from zero.
+ */
+public class RegressionAccumulator implements PointConsumer {
+
+	private long count;
+	private double weight;
+	private double meanX;
+	private double meanY;
+	// sums of products of deviations from the means
+	private double sxx;
+	private double syy;
+	private double sxy;
+
+	/**
+	 * Constructor - no points yet
+	 */
+	public RegressionAccumulator() {
+	}
+
+	/**
+	 * Copy constructor
+	 */
+	public RegressionAccumulator(RegressionAccumulator other) {
+		this.count = other.count;
+		this.weight = other.weight;
+		this.meanX = other.meanX;
+		this.meanY = other.meanY;
+		this.sxx = other.sxx;
+		this.syy = other.syy;
+		this.sxy = other.sxy;
+	}
+
+	@Override
+	public void accept(double x, double y) {
+		add(x, y, 1);
+	}
+
+	@Override
+	public void accept(double x, double y, double w) {
+		add(x, y, w);
+	}
+
+	/**
+	 * Adds a point with unit weight
+	 */
+	public void add(double x, double y) {
+		add(x, y, 1);
+	}
+
+	/**
+	 * Adds a point
+	 */
+	public void add(Vector3 point) {
+		add(point.getX(), point.getY(), 1);
+	}
+
+	/**
+	 * Adds a point that counts w times. A point of zero weight is skipped, as
+	 * it would leave the means undefined while it is the only one.
+	 */
+	public void add(double x, double y, double w) {
+		if (w == 0) {
+			return;
+		}
+		count++;
+		weight += w;
+		double dx = x - meanX;
+		double dy = y - meanY;
+		double ratio = w / weight;
+		meanX += dx * ratio;
+		meanY += dy * ratio;
+		// one old and one new deviation keeps the update exact
+		double dyNew = y - meanY;
+		sxx += w * dx * (x - meanX);
+		syy += w * dy * dyNew;
+		sxy += w * dx * dyNew;
+	}
+
+	/**
+	 * Adds every point of a data set, with its weight
+	 */
+	public void addAll(DataSet data) {
+		double[] xs = data.xs();
+		double[] ys = data.ys();
+		double[] weights = data.weights();
+		int end = data.offset() + data.size();
+		for (int i = data.offset(); i < end; i++) {
+			add(xs[i], ys[i], weights == null ? 1 : weights[i]);
+		}
+	}
+
+	/**
+	 * Takes back a point added earlier with unit weight
+	 */
+	public void remove(double x, double y) {
+		remove(x, y, 1);
+	}
+
+	/**
+	 * Takes back a point added earlier with weight w, by running the Welford
+	 * update backwards
+	 */
+	public void remove(double x, double y, double w) {
+		if (w == 0) {
+			return;
+		}
+		double remaining = weight - w;
+		if (count <= 1 || remaining <= 0) {
+			clear();
+			return;
+		}
+		count--;
+		double oldMeanX = meanX;
+		double oldMeanY = meanY;
+		meanX -= w * (x - meanX) / remaining;
+		meanY -= w * (y - meanY) / remaining;
+		weight = remaining;
+		double dyOld = y - oldMeanY;
+		sxx -= w * (x - meanX) * (x - oldMeanX);
+		syy -= w * (y - meanY) * dyOld;
+		sxy -= w * (x - meanX) * dyOld;
+	}
+
+	/**
+	 * Multiplies the weight of every point so far by factor, leaving the fit
+	 * unchanged. Used to let old points fade.
+	 */
+	public void scale(double factor) {
+		weight *= factor;
+		sxx *= factor;
+		syy *= factor;
+		sxy *= factor;
+	}
+
+	/**
+	 * Folds another accumulator's points into this one
+	 */
+	public void merge(RegressionAccumulator other) {
+		if (other.weight == 0) {
+			count += other.count;
+			return;
+		}
+		if (weight == 0) {
+			long oldCount = count;
+			copyFrom(other);
+			count += oldCount;
+			return;
+		}
+		double total = weight + other.weight;
+		double dx = other.meanX - meanX;
+		double dy = other.meanY - meanY;
+		double factor = weight * other.weight / total;
+
+		sxx += other.sxx + dx * dx * factor;
+		syy += other.syy + dy * dy * factor;
+		sxy += other.sxy + dx * dy * factor;
+		meanX += dx * other.weight / total;
+		meanY += dy * other.weight / total;
+		weight = total;
+		count += other.count;
+	}
+
+	private void copyFrom(RegressionAccumulator other) {
+		count = other.count;
+		weight = other.weight;
+		meanX = other.meanX;
+		meanY = other.meanY;
+		sxx = other.sxx;
+		syy = other.syy;
+		sxy = other.sxy;
+	}
+
+	/**
+	 * Forgets every point
+	 */
+	public void clear() {
+		count = 0;
+		weight = 0;
+		meanX = 0;
+		meanY = 0;
+		sxx = 0;
+		syy = 0;
+		sxy = 0;
+	}
+
+	/**
+	 * Writes the statistics in a form readFrom restores exactly
+	 */
+	public void writeTo(DataOutput out) throws IOException {
+		out.writeLong(count);
+		out.writeDouble(weight);
+		out.writeDouble(meanX);
+		out.writeDouble(meanY);
+		out.writeDouble(sxx);
+		out.writeDouble(syy);
+		out.writeDouble(sxy);
+	}
+
+	/**
+	 * Reads statistics written by writeTo
+	 */
+	public static RegressionAccumulator readFrom(DataInput in) throws IOException {
+		RegressionAccumulator response = new RegressionAccumulator();
+		response.count = in.readLong();
+		response.weight = in.readDouble();
+		response.meanX = in.readDouble();
+		response.meanY = in.readDouble();
+		response.sxx = in.readDouble();
+		response.syy = in.readDouble();
+		response.sxy = in.readDouble();
+		return response;
+	}
+
+	/**
+	 * Returns the number of points added
+	 */
+	public long count() {
+		return count;
+	}
+
+	/**
+	 * Returns the total weight of the points (the count, if unweighted)
+	 */
+	public double weight() {
+		return weight;
+	}
+
+	/**
+	 * @return weighted mean of x
+	 */
+	public double meanX() {
+		return meanX;
+	}
+
+	/**
+	 * @return weighted mean of y
+	 */
+	public double meanY() {
+		return meanY;
+	}
+
+	/**
+	 * Raw sums, as they appear in the normal equations
+	 */
+	public double sumX() {
+		return weight * meanX;
+	}
+
+	public double sumY() {
+		return weight * meanY;
+	}
+
+	public double sumXX() {
+		return sxx + weight * meanX * meanX;
+	}
+
+	public double sumXY() {
+		return sxy + weight * meanX * meanY;
+	}
+
+	public double sumYY() {
+		return syy + weight * meanY * meanY;
+	}
+
+	/**
+	 * Returns the 2 x 2 normal matrix A^T A for the model y = m*x + b
+	 */
+	public Matrix normalMatrix() {
+		double sumX = sumX();
+		return new Matrix(new double[][] { { sumXX(), sumX }, { sumX, weight } });
+	}
+
+	/**
+	 * Returns the 2 x 1 right side A^T y for the model y = m*x + b
+	 */
+	public Matrix normalRightSide() {
+		return new Matrix(new double[][] { { sumXY() }, { sumY() } });
+	}
+
+	/**
+	 * @return slope of the least-squares line, NaN if x never varies
+	 */
+	public double slope() {
+		if (sxx == 0) {
+			return Double.NaN;
+		}
+		return sxy / sxx;
+	}
+
+	/**
+	 * @return y intercept of the least-squares line, NaN if x never varies
+	 */
+	public double intercept() {
+		return meanY - slope() * meanX;
+	}
+
+	/**
+	 * @return sum of squared vertical residuals about the least-squares line
+	 */
+	public double sumSquaredResiduals() {
+		if (sxx == 0) {
+			return syy;
+		}
+		return Math.max(0, syy - sxy * sxy / sxx);
+	}
+}
@@ -0,0 +1,376 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.DoubleSupplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Benchmarks each stage of the pipeline - parsing, assembling the normal
+ * equations, solving, the chi squared pass and rendering the plot - over a
+ * range of sizes. The fit cases include an ill-conditioned polynomial
+ * solved by the normal equations, by QR, and by LeastSquares.
+ *
+ * Every case is run for a number of warmup iterations and then timed; the
+ * median time per operation and the bytes allocated per operation (like
+ * JMH's -prof gc) are reported. Results are written as JSON, and a previous
+ * results file can be given as a baseline: any case that got slower by more
+ * than the threshold is reported and the exit status is 1. This is the
+ * quick, dependency-free check; the JMH module in benchmark/ runs the same
+ * cases in forked JVMs for numbers worth publishing.
+ *
+ * Arguments (all optional):
+ *
+ * <pre>
+ * -points 8        largest data set, as a power of ten, 2 to 9 (default 6)
+ * -matrix 2000     largest matrix side (default 500)
+ * -warmup 5        warmup iterations per case
+ * -iterations 10   timed iterations per case
+ * -out results.json
+ * -baseline old.json
+ * -threshold 0.10  allowed slowdown against the baseline
+ * </pre>
+ */
+public class RegressionBenchmark {
+
+	private static final Pattern RESULT = Pattern
+			.compile("\"name\"\\s*:\\s*\"([^\"]+)\"\\s*,\\s*\"nsPerOp\"\\s*:\\s*([0-9.Ee+-]+)");
+
+	private static final int[] MATRIX_SIDES = { 2, 10, 50, 100, 200, 500, 1000, 2000 };
+	// 10^9 is the most points an int count and a Java array can hold
+	private static final int MAX_POINTS_POWER = 9;
+	private static final int MAX_LIST_POINTS = 10_000_000;
+	private static final int RENDER_SIDE = 1100;
+	// degree of the ill-conditioned fit; its design has degree + 1 columns
+	private static final int POLYNOMIAL_DEGREE = 10;
+	private static final int MAX_POLYNOMIAL_POINTS = 1_000_000;
+
+	private int maxPointsPower = 6;
+	private int maxMatrixSide = 500;
+	private int warmup = 5;
+	private int iterations = 10;
+	private String out = "bench_output.json";
+	private String baseline = null;
+	private double threshold = 0.10;
+
+	private final Map<String, double[]> results = new LinkedHashMap<>();
+	// keeps results alive so the JIT cannot drop the work
+	private double sink;
+
+	/**
+	 * A single benchmarked operation
+	 */
+	private interface Operation {
+		double run() throws Exception;
+	}
+
+	public static void main(String[] args) throws Exception {
+		RegressionBenchmark benchmark = new RegressionBenchmark();
+		for (int i = 0; i < args.length; i++) {
+			switch (args[i]) {
+			case "-points":
+				benchmark.maxPointsPower = Integer.parseInt(args[++i]);
+				if (benchmark.maxPointsPower < 2 || benchmark.maxPointsPower > MAX_POINTS_POWER) {
+					System.out.println("Error: -points must be between 2 and " + MAX_POINTS_POWER);
+					return;
+				}
+				break;
+			case "-matrix":
+				benchmark.maxMatrixSide = Integer.parseInt(args[++i]);
+				break;
+			case "-warmup":
+				benchmark.warmup = Integer.parseInt(args[++i]);
+				break;
+			case "-iterations":
+				benchmark.iterations = Integer.parseInt(args[++i]);
+				break;
+			case "-out":
+				benchmark.out = args[++i];
+				break;
+			case "-baseline":
+				benchmark.baseline = args[++i];
+				break;
+			case "-threshold":
+				benchmark.threshold = Double.parseDouble(args[++i]);
+				break;
+			default:
+				System.out.println("Error: Unknown argument " + args[i]);
+				return;
+			}
+		}
+
+		benchmark.runAll();
+		benchmark.write();
+		if (benchmark.baseline != null && !benchmark.compare()) {
+			System.exit(1);
+		}
+	}
+
+	private void runAll() throws Exception {
+		for (int power = 2; power <= maxPointsPower; power++) {
+			int points = (int) Math.pow(10, power);
+			File data = writeData(points);
+			try {
+				measureAll(pointCases(data.getPath(), points), "[" + points + "]");
+			} finally {
+				data.delete();
+			}
+		}
+
+		for (int side : MATRIX_SIDES) {
+			if (side <= maxMatrixSide) {
+				measureAll(matrixCases(side), "[" + side + "]");
+			}
+		}
+	}
+
+	private void measureAll(Map<String, Operation> cases, String size) throws Exception {
+		for (Map.Entry<String, Operation> entry : cases.entrySet()) {
+			measure(entry.getKey() + size, entry.getValue());
+		}
+	}
+
+	/**
+	 * Prepares a single case for another harness, such as the JMH module in
+	 * benchmark/. Size is the number of points for the parse, assemble,
+	 * chiSquared and render cases, and the matrix side for the rest.
+	 *
+	 * @param name - a case name without its size, e.g. "solve.LinearSolver"
+	 */
+	public static DoubleSupplier prepare(String name, int size) throws IOException {
+		Map<String, Operation> cases;
+		if (name.startsWith("matrix.") || name.startsWith("solve.")) {
+			cases = matrixCases(size);
+		} else {
+			File data = writeData(size);
+			data.deleteOnExit();
+			cases = pointCases(data.getPath(), size);
+		}
+		Operation operation = cases.get(name);
+		if (operation == null) {
+			throw new IllegalArgumentException("No case " + name + " for size " + size);
+		}
+		return () -> {
+			try {
+				return operation.run();
+			} catch (Exception e) {
+				throw new IllegalStateException(name, e);
+			}
+		};
+	}
+
+	/**
+	 * Returns the cases over a data file, in the order they are reported
+	 */
+	private static Map<String, Operation> pointCases(String name, int points) throws IOException {
+		Map<String, Operation> cases = new LinkedHashMap<>();
+
+		// FileParser holds every point, so stop it before it fills the heap
+		if (points <= MAX_LIST_POINTS) {
+			cases.put("parse.FileParser", () -> FileParser.parseFile(name).size());
+		}
+		cases.put("parse.MappedDataReader", () -> {
+			RegressionAccumulator accumulator = new RegressionAccumulator();
+			MappedDataReader.read(name, accumulator);
+			return accumulator.slope();
+		});
+
+		if (points > MAX_LIST_POINTS) {
+			return cases;
+		}
+		ArrayList<Vector3> list = FileParser.parseFile(name);
+		Matrix design = new Matrix(points, 2);
+		Matrix observed = new Matrix(points, 1);
+		for (int i = 0; i < points; i++) {
+			design.set(list.get(i).getX(), i, 0);
+			design.set(1, i, 1);
+			observed.set(list.get(i).getY(), i, 0);
+		}
+
+		cases.put("assemble.transposeMultiply", () -> {
+			Matrix normal = design.transpose().multiply(design);
+			Matrix right = design.transpose().multiply(observed);
+			return normal.get(0, 0) + right.get(0, 0);
+		});
+		cases.put("assemble.gram", () -> design.gram().get(0, 0) + design.transposeMultiply(observed).get(0, 0));
+		cases.put("assemble.accumulator", () -> {
+			RegressionAccumulator accumulator = new RegressionAccumulator();
+			for (int i = 0; i < points; i++) {
+				accumulator.add(list.get(i));
+			}
+			return accumulator.slope();
+		});
+
+		RegressionAccumulator fit = new RegressionAccumulator();
+		for (Vector3 point : list) {
+			fit.add(point);
+		}
+		Vector3 line = new Vector3(-1, -fit.slope(), 0);
+		RegressionVisualizer visualizer = new RegressionVisualizer();
+		DataSet columns = DataSet.of(list);
+		cases.put("chiSquared.visualizer", () -> visualizer.chiSquared(line, list));
+		cases.put("chiSquared.dataSet", () -> visualizer.chiSquared(line, columns));
+		cases.put("chiSquared.residuals", () -> Residuals.compute(columns, fit.slope(), fit.intercept()).chiSquared());
+
+		cases.put("fit.line.LeastSquares", () -> solution(new LeastSquares(design, observed).getSolution()));
+
+		// an ill-conditioned fit of the same points: the normal equations
+		// alone, QR alone, and LeastSquares choosing between them
+		if (points <= MAX_POLYNOMIAL_POINTS) {
+			Matrix polynomial = new DesignMatrixBuilder(1).degree(POLYNOMIAL_DEGREE).build(design.column(0));
+			cases.put("fit.polynomial.normalEquations",
+					() -> solution(new CholeskySolver(polynomial.gram()).solve(polynomial.transposeMultiply(observed))));
+			cases.put("fit.polynomial.QR", () -> solution(new QRDecomposition(polynomial).solve(observed)));
+			cases.put("fit.polynomial.LeastSquares",
+					() -> solution(new LeastSquares(polynomial, observed).getSolution()));
+		}
+
+		// the whole plot: dots or density binning, the fit and the caption
+		cases.put("render.plot", () -> {
+			RegressionVisualizer plot = new RegressionVisualizer();
+			plot.addPoints(columns);
+			plot.setLine(fit.slope(), fit.intercept());
+			return plot.renderToImage(RENDER_SIDE, RENDER_SIDE).getRGB(RENDER_SIDE / 2, RENDER_SIDE / 2);
+		});
+		return cases;
+	}
+
+	/**
+	 * Returns the first coefficient of a solution, 0 if there is none
+	 */
+	private static double solution(Matrix solution) {
+		return solution == null ? 0 : solution.get(0, 0);
+	}
+
+	/**
+	 * Returns the cases over a random, diagonally dominant side x side system
+	 */
+	private static Map<String, Operation> matrixCases(int side) {
+		Random random = new Random(side);
+		Matrix a = new Matrix(side, side);
+		Matrix b = new Matrix(side, 1);
+		for (int i = 0; i < side; i++) {
+			for (int j = 0; j < side; j++) {
+				a.set(random.nextGaussian(), i, j);
+			}
+			a.set(a.get(i, i) + side, i, i);
+			b.set(random.nextGaussian(), i, 0);
+		}
+
+		Map<String, Operation> cases = new LinkedHashMap<>();
+		cases.put("matrix.multiply", () -> a.multiply(a).get(0, 0));
+		cases.put("matrix.transpose", () -> a.transpose().get(0, 1));
+		cases.put("solve.LinearSolver", () -> new LinearSolver(a, b).getSolution().get(0, 0));
+
+		LinearSolver solver = new LinearSolver(a, b);
+		cases.put("solve.eliminate", () -> solver.upperTriangular(a, b).get(0, 0));
+		Matrix reduced = solver.upperTriangular(a, b);
+		cases.put("solve.backSubstitute", () -> solver.backSubstitute(reduced).get(0, 0));
+		return cases;
+	}
+
+	/**
+	 * Runs an operation through warmup and timed iterations and records the
+	 * median time and mean allocation per call
+	 */
+	private void measure(String name, Operation operation) throws Exception {
+		for (int i = 0; i < warmup; i++) {
+			sink += operation.run();
+		}
+
+		long[] times = new long[iterations];
+		long allocated = 0;
+		for (int i = 0; i < iterations; i++) {
+			long bytesBefore = allocatedBytes();
+			long start = System.nanoTime();
+			sink += operation.run();
+			times[i] = System.nanoTime() - start;
+			allocated += allocatedBytes() - bytesBefore;
+		}
+		Arrays.sort(times);
+		double median = times[iterations / 2];
+		double bytes = (double) allocated / iterations;
+
+		results.put(name, new double[] { median, bytes });
+		System.out.printf("%-40s %14.0f ns/op %14.0f B/op%n", name, median, bytes);
+	}
+
+	/**
+	 * Bytes allocated so far by this thread, or 0 if the JVM cannot tell
+	 */
+	private static long allocatedBytes() {
+		java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (bean instanceof com.sun.management.ThreadMXBean) {
+			return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+		}
+		return 0;
+	}
+
+	/**
+	 * Writes a temporary data file of noisy points on a line
+	 */
+	private static File writeData(int points) throws IOException {
+		File file = File.createTempFile("regression", ".txt");
+		Random random = new Random(points);
+		try (PrintWriter writer = new PrintWriter(file, "UTF-8")) {
+			for (int i = 0; i < points; i++) {
+				double x = random.nextDouble() * 20 - 10;
+				double y = 0.5 * x - 2 + random.nextGaussian();
+				writer.print(Math.round(x * 1E4) / 1E4);
+				writer.print('\t');
+				writer.print(Math.round(y * 1E4) / 1E4);
+				writer.print('\n');
+			}
+		}
+		return file;
+	}
+
+	private void write() throws IOException {
+		try (PrintWriter writer = new PrintWriter(out, "UTF-8")) {
+			writer.println("[");
+			int i = 0;
+			for (Map.Entry<String, double[]> entry : results.entrySet()) {
+				writer.printf("  {\"name\": \"%s\", \"nsPerOp\": %.1f, \"bytesPerOp\": %.1f}%s%n", entry.getKey(),
+						entry.getValue()[0], entry.getValue()[1], ++i < results.size() ? "," : "");
+			}
+			writer.println("]");
+		}
+		System.out.println("Wrote " + out + " (checksum " + sink + ")");
+	}
+
+	/**
+	 * Compares the results against the baseline file
+	 *
+	 * @return false if any case regressed by more than the threshold
+	 */
+	private boolean compare() throws IOException {
+		String text = new String(Files.readAllBytes(Paths.get(baseline)), StandardCharsets.UTF_8);
+		Matcher matcher = RESULT.matcher(text);
+		boolean passed = true;
+		while (matcher.find()) {
+			double[] current = results.get(matcher.group(1));
+			if (current == null) {
+				continue;
+			}
+			double before = Double.parseDouble(matcher.group(2));
+			double change = (current[0] - before) / before;
+			if (change > threshold) {
+				passed = false;
+				System.out.printf("REGRESSION %-40s %+.1f%%%n", matcher.group(1), change * 100);
+			}
+		}
+		if (passed) {
+			System.out.println("No regressions against " + baseline);
+		}
+		return passed;
+	}
+}
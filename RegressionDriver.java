@@ -1,35 +1,99 @@
-import java.util.ArrayList;
+import java.io.IOException;
 
 public class RegressionDriver {
 
 	private static String fileName = "regressionData.txt";
+	private static String cacheDirectory = ".fitcache";
+	// when set, the plot is written here instead of only shown on screen
+	private static String pngFile = null;
+	// when set, the line is fitted with this loss instead of least squares
+	private static RobustRegression.Loss robustLoss = null;
 
+	/**
+	 * Arguments: an optional data file name, -parallel to fit on every core
+	 * without plotting the individual points, and -cache to plot only the
+	 * line, reusing the fit from an earlier run over the same data. -png
+	 * followed by a file name also writes the plot there, which works without
+	 * a display. -robust huber or -robust tukey fits the plotted points with
+	 * that loss so outliers do not pull the line; it needs every point on each
+	 * iteration, so it cannot be combined with -parallel or -cache.
+	 */
 	public static void main(String[] args) {
-		RegressionVisualizer visualizer = RegressionVisualizer.createVisualizer();
+		boolean parallel = false;
+		boolean cache = false;
+		for (int i = 0; i < args.length; i++) {
+			String arg = args[i];
+			if (arg.equals("-png") && i + 1 < args.length) {
+				pngFile = args[++i];
+			} else if (arg.equals("-robust") && i + 1 < args.length) {
+				String name = args[++i];
+				try {
+					robustLoss = RobustRegression.Loss.valueOf(name.toUpperCase());
+				} catch (IllegalArgumentException e) {
+					System.out.println("Error: Unknown loss " + name + ", expected huber or tukey");
+					return;
+				}
+			} else if (arg.equals("-parallel")) {
+				parallel = true;
+			} else if (arg.equals("-cache")) {
+				cache = true;
+			} else {
+				fileName = arg;
+			}
+		}
 
-		ArrayList<Vector3> dataPoints = FileParser.parseFile(fileName);
+		if (robustLoss != null && (parallel || cache)) {
+			System.out.println("Error: -robust cannot be combined with " + (parallel ? "-parallel" : "-cache"));
+			return;
+		}
 
-		if (dataPoints.size() > 0) {
-			Matrix A = new Matrix(dataPoints.size(), 2);
-			Matrix b = new Matrix(dataPoints.size(), 1);
+		RegressionVisualizer visualizer = RegressionVisualizer.createVisualizer();
 
-			for (int i = 0; i < dataPoints.size(); i++) {
-				A.set(dataPoints.get(i).getX(), i, 0);
-				A.set(1, i, 1);
-				b.set(dataPoints.get(i).getY(), i, 0);
-				visualizer.addPoint(dataPoints.get(i));
+		if (cache) {
+			// nothing to plot but the line, so a cached fit skips the data entirely
+			try {
+				FitCache.Fit fit = new FitCache(FitCache.DEFAULT_BYTES, cacheDirectory).fit(fileName,
+						new DesignMatrixBuilder(1));
+				if (fit != null) {
+					visualizer.setLine(fit.coefficient(0), fit.coefficient(1));
+				}
+			} catch (IOException e) {
+				System.out.println("Error: " + e.getMessage());
+			}
+		} else {
+			RegressionAccumulator accumulator = new RegressionAccumulator();
+			if (parallel) {
+				try {
+					accumulator = new ParallelRegression().fit(fileName);
+				} catch (IOException e) {
+					System.out.println("Error: " + e.getMessage());
+				}
+			} else {
+				DataSet dataPoints = DataSet.read(fileName);
+				accumulator.addAll(dataPoints);
+				visualizer.addPoints(dataPoints);
+				if (robustLoss != null && dataPoints.size() > 0) {
+					double[] line = new RobustRegression(robustLoss).fit(dataPoints);
+					if (line != null) {
+						visualizer.setLine(line[0], line[1]);
+						accumulator.clear();
+					}
+				}
 			}
 
-			Matrix squareSymmetric = A.transpose().multiply(A);
-			Matrix AtransposeB = A.transpose().multiply(b);
-			
-			LinearSolver solver = new LinearSolver(squareSymmetric, AtransposeB);
+			if (accumulator.count() > 0) {
+				double slope = accumulator.slope();
+				double yIntercept = accumulator.intercept();
+				visualizer.setLine(slope, yIntercept);
+			}
+		}
 
-			Matrix solution = solver.getSolution();
-			
-			double slope = solution.get(0, 0);
-			double yIntercept = solution.get(1, 0);
-			visualizer.setLine(slope, yIntercept);
+		if (pngFile != null) {
+			try {
+				visualizer.writePng(pngFile);
+			} catch (IOException e) {
+				System.out.println("Error: " + e.getMessage());
+			}
 		}
 	}
 }
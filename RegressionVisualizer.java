@@ -1,11 +1,20 @@
 import java.awt.Color;
 import java.awt.Font;
 import java.awt.Graphics;
-import java.awt.Point;
+import java.awt.Graphics2D;
+import java.awt.GraphicsEnvironment;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
 import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
 
+import javax.imageio.ImageIO;
 import javax.swing.JFrame;
 import javax.swing.JPanel;
+import javax.swing.SwingUtilities;
 
 
 public class RegressionVisualizer extends JPanel {
@@ -17,33 +26,75 @@ public class RegressionVisualizer extends JPanel {
 
 	private static final int WIDTH = 1100;
 	private static final int HEIGHT = 1100;
+
+	private static final Font FONT = new Font("TimesRoman", Font.PLAIN, 30);
+	// above this many points, draw the density raster instead of each dot
+	private static final int DOT_LIMIT = 20000;
+	// point additions within this many milliseconds share one repaint
+	private static final long REPAINT_DELAY = 40;
+	// edge of a raster cell in pixels, so the grid follows the drawing size
+	private static final int RASTER_CELL_PIXELS = 4;
+	// raster shades from light to full blue, indexed by density * 255
+	private static final Color[] SHADES = new Color[256];
+
+	static {
+		for (int i = 0; i < SHADES.length; i++) {
+			SHADES[i] = new Color(0, 0, 255, 40 + i * 215 / 255);
+		}
+	}
 	
-	private ArrayList<Vector3> points = new ArrayList<>();
+	// The plotted state below is read by paint on the event dispatch thread,
+	// so every change to it is made there too, through onEventThread.
+	private DataSet points = new DataSet();
+	// the points binned for drawing large data sets
+	private DensityRaster raster;
 	private ArrayList<Vector3> lines = new ArrayList<>();	
 	
 	
 	private Vector3 line = Vector3.nullVector();
 	private double slope = 0;
 	private double yIntercept = 0;
+	// goodness of fit for the current points and line, null until needed
+	private Residuals residuals;
 	private static final int shift = 0;
 	
+	private static final int DOT_SIZE = 10;
+
+	private static final double SIZE = 22;
+
+	// dimensions of the surface being drawn on, set at the start of render
+	private int renderWidth = WIDTH;
+	private int renderHeight = HEIGHT;
+
 	public RegressionVisualizer() {
 		setBackground(Color.WHITE);
 
 		this.setSize(WIDTH, HEIGHT);
 	}
-	
-	private static int DOT_SIZE = 10;
-
-	private static double SIZE = 22;
 
 	@Override
 	public void paint(Graphics arg0) {
 		
 		super.paint(arg0);
-		
-		for (Vector3 point : points) {
-			drawPoint(arg0, point, Color.BLUE);
+		render(arg0, getWidth(), getHeight());
+	}
+
+	/**
+	 * Draws the points, fit, axes and caption on a width x height surface.
+	 * Small data sets are drawn dot by dot; large ones from the density
+	 * raster, so the cost stays bounded however many points there are.
+	 */
+	private void render(Graphics arg0, int width, int height) {
+		renderWidth = width;
+		renderHeight = height;
+
+		arg0.setColor(Color.BLUE);
+		if (points.size() <= DOT_LIMIT) {
+			for (int i = 0; i < points.size(); i++) {
+				drawPoint(arg0, points.x(i), points.y(i));
+			}
+		} else {
+			drawRaster(arg0);
 		}
 		drawFit(arg0);
 		arg0.setColor(Color.BLUE);
@@ -54,14 +105,46 @@ public class RegressionVisualizer extends JPanel {
 			double xMin = -SIZE;
 			double xMax = SIZE;
 			
-			Point min = transform(xMin, yMin);
-			Point max = transform(xMax, yMax);
-			arg0.drawLine(min.x, min.y, max.x, max.y);
+			arg0.drawLine(transformX(xMin), transformY(yMin), transformX(xMax), transformY(yMax));
 		}
 		arg0.setColor(Color.RED);
 		drawText(arg0, 5, 25);
 
 	}
+
+	private void drawRaster(Graphics arg0) {
+		DensityRaster raster = getRaster(renderWidth / RASTER_CELL_PIXELS, renderHeight / RASTER_CELL_PIXELS);
+		int columns = raster.columns();
+		int rows = raster.rows();
+		for (int row = 0; row < rows; row++) {
+			int top = row * renderHeight / rows;
+			int bottom = (row + 1) * renderHeight / rows;
+			for (int column = 0; column < columns; column++) {
+				double density = raster.density(column, row);
+				if (density == 0) {
+					continue;
+				}
+				int left = column * renderWidth / columns;
+				int right = (column + 1) * renderWidth / columns;
+				arg0.setColor(SHADES[(int) (density * 255)]);
+				arg0.fillRect(left, top, right - left, bottom - top);
+			}
+		}
+	}
+
+	/**
+	 * Returns the points binned into a columns x rows grid, binning them only
+	 * after they have changed or the grid size has
+	 */
+	private DensityRaster getRaster(int columns, int rows) {
+		columns = Math.max(1, columns);
+		rows = Math.max(1, rows);
+		if (raster == null || raster.columns() != columns || raster.rows() != rows) {
+			raster = new DensityRaster(columns, rows, SIZE);
+			raster.addAll(points);
+		}
+		return raster;
+	}
 	
 	public double chiSquared(Vector3 pointOnLine, ArrayList<Vector3> pointList) {
 		double chi2 = 0;
@@ -72,44 +155,93 @@ public class RegressionVisualizer extends JPanel {
 		return chi2;
 	}
 	
+	/**
+	 * Same as chiSquared over a list, reading the point columns directly
+	 */
+	public double chiSquared(Vector3 pointOnLine, DataSet pointList) {
+		// |p x (p - l)| reduces to |p.y * l.x - p.x * l.y| in the xy plane
+		double lx = pointOnLine.getX();
+		double ly = pointOnLine.getY();
+		double[] xs = pointList.xs();
+		double[] ys = pointList.ys();
+		int end = pointList.offset() + pointList.size();
+		double chi2 = 0;
+		for (int i = pointList.offset(); i < end; i++) {
+			double cross = ys[i] * lx - xs[i] * ly;
+			chi2 += cross * cross;
+		}
+		return chi2 / (lx * lx + ly * ly);
+	}
+
 	public double distance(Vector3 point, Vector3 pointOnLine) {
 		Vector3 crossProduct = Vector3.cross(point, Vector3.subtract(point, pointOnLine));
 		return crossProduct.magnitude() / pointOnLine.magnitude();
 	}
 	
-	private Point transform(double x, double y) {
+	private int transformX(double x) {
 		// xprime = M*(x/S + 1/2)
-		int xCoord = (int)Math.round((x / SIZE + .5) * getSize().getWidth());
-		// yprime = M*(-y/S+1/2)
-		int yCoord = (int)Math.round((.5 - y / SIZE) * (int)getSize().getHeight());
-		return new Point(xCoord, yCoord);
+		return (int)Math.round((x / SIZE + .5) * renderWidth);
 	}
 
-	private void drawPoint(Graphics arg0, Vector3 point, Color color) {
-		Point newPoint = transform(point.getX(), point.getY());
+	private int transformY(double y) {
+		// yprime = M*(-y/S+1/2)
+		return (int)Math.round((.5 - y / SIZE) * renderHeight);
+	}
 
-		arg0.setColor(color);
-		arg0.fillOval(newPoint.x, newPoint.y, DOT_SIZE, DOT_SIZE);
+	private void drawPoint(Graphics arg0, double x, double y) {
+		arg0.fillOval(transformX(x), transformY(y), DOT_SIZE, DOT_SIZE);
 	}
 	
 	private void drawText(Graphics arg0, int x, int y) {
 		String equation = "y = " + String.valueOf(slope) + "x + " + String.valueOf(yIntercept);
-		String chi2 = String.valueOf(chiSquared(line, points));
-		arg0.setFont(new Font("TimesRoman", Font.PLAIN, 30));
+		String chi2 = String.valueOf(getResiduals().chiSquared());
+		arg0.setFont(FONT);
 		arg0.drawString(equation + "  Chi Squared:  " + chi2, x, y);
 	}
 	
+	/**
+	 * Adds one point. Repaints are delayed briefly so a stream of additions
+	 * is drawn once rather than once per point.
+	 */
 	public void addPoint(Vector3 point) {
-		points.add(point.add(new Vector3(0, shift, 0)));
-		repaint();
+		double x = point.getX();
+		double y = point.getY() + shift;
+		onEventThread(() -> {
+			points.add(x, y);
+			if (raster != null) {
+				raster.add(x, y);
+			}
+			residuals = null;
+			repaint(REPAINT_DELAY);
+		});
+	}
+
+	/**
+	 * Adds a whole data set with a single repaint. The points are copied on
+	 * the event dispatch thread, so the data set must not change until then.
+	 */
+	public void addPoints(DataSet data) {
+		onEventThread(() -> {
+			for (int i = 0; i < data.size(); i++) {
+				points.add(data.x(i), data.y(i) + shift, data.weight(i));
+				if (raster != null) {
+					raster.add(data.x(i), data.y(i) + shift);
+				}
+			}
+			residuals = null;
+			repaint(REPAINT_DELAY);
+		});
 	}
 	
 	public void setLine(double slope, double yIntercept) {
-		this.slope = slope;
-		this.yIntercept = yIntercept + shift;
-		lines.add(xAxis);
-		lines.add(yAxis);
-		repaint();
+		onEventThread(() -> {
+			this.slope = slope;
+			this.yIntercept = yIntercept + shift;
+			residuals = null;
+			lines.add(xAxis);
+			lines.add(yAxis);
+			repaint();
+		});
 	}
 	
 	private void drawFit(Graphics arg0) {
@@ -125,20 +257,107 @@ public class RegressionVisualizer extends JPanel {
 		double xMin = -SIZE;
 		double xMax = SIZE;
 		
-		Point min = transform(xMin, yMin);
-		Point max = transform(xMax, yMax);
-		
 		//Point p = transform(0, yIntercept);
-		arg0.drawLine(min.x, min.y, max.x, max.y);
+		arg0.drawLine(transformX(xMin), transformY(yMin), transformX(xMax), transformY(yMax));
 	}
 	
+	/**
+	 * Returns the residual statistics of the points about the fitted line,
+	 * computing them only when the points or the line have changed
+	 */
+	public Residuals getResiduals() {
+		return onEventThreadAndWait(() -> {
+			if (residuals == null) {
+				residuals = Residuals.compute(points, slope, yIntercept);
+			}
+			return residuals;
+		});
+	}
+
 	public void clear() {
-		points.clear();
-		line = Vector3.nullVector();
+		onEventThread(() -> {
+			points.clear();
+			raster = null;
+			residuals = null;
+			line = Vector3.nullVector();
+		});
 	}
 		
+	/**
+	 * Draws the plot into an image, without needing a display. The drawing
+	 * runs on the event dispatch thread, after every change made before the
+	 * call.
+	 */
+	public BufferedImage renderToImage(int width, int height) {
+		return onEventThreadAndWait(() -> {
+			BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+			Graphics2D graphics = image.createGraphics();
+			try {
+				graphics.setColor(getBackground());
+				graphics.fillRect(0, 0, width, height);
+				render(graphics, width, height);
+			} finally {
+				graphics.dispose();
+			}
+			return image;
+		});
+	}
+
+	/**
+	 * Makes a change to the plotted state on the event dispatch thread, now
+	 * if this is that thread and otherwise after the changes already queued
+	 */
+	private static void onEventThread(Runnable change) {
+		if (SwingUtilities.isEventDispatchThread()) {
+			change.run();
+		} else {
+			SwingUtilities.invokeLater(change);
+		}
+	}
+
+	/**
+	 * Reads the plotted state on the event dispatch thread, waiting for the
+	 * changes queued before it
+	 */
+	private static <T> T onEventThreadAndWait(Supplier<T> query) {
+		if (SwingUtilities.isEventDispatchThread()) {
+			return query.get();
+		}
+		AtomicReference<T> response = new AtomicReference<>();
+		try {
+			SwingUtilities.invokeAndWait(() -> response.set(query.get()));
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while waiting to draw", e);
+		} catch (InvocationTargetException e) {
+			throw new IllegalStateException(e.getCause());
+		}
+		return response.get();
+	}
+
+	/**
+	 * Writes the plot to a PNG file at the default window size
+	 */
+	public void writePng(String fileName) throws IOException {
+		writePng(fileName, WIDTH, HEIGHT);
+	}
+
+	/**
+	 * Writes the plot to a PNG file
+	 */
+	public void writePng(String fileName, int width, int height) throws IOException {
+		ImageIO.write(renderToImage(width, height), "png", new File(fileName));
+	}
+
+	/**
+	 * Creates a visualizer in a window, or without one when there is no
+	 * display, in which case the plot can still be written with writePng
+	 */
 	static public RegressionVisualizer createVisualizer() {
 		RegressionVisualizer visualizer = new RegressionVisualizer();
+		if (GraphicsEnvironment.isHeadless()) {
+			return visualizer;
+		}
 		
 		JFrame frame = new JFrame();
 		frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
@@ -0,0 +1,519 @@
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * K-fold cross-validation and bootstrap resampling for a linear model over a
+ * data set, without copying the data for each resample.
+ *
+ * Cross-validation accumulates the normal equations of every fold in one
+ * parallel pass. Each training set is then the total minus one fold, and
+ * each fold's test error follows from its own sums:
+ *
+ * <pre>
+ * sum w (y - x.b)^2 = y^T W y - 2 b^T X^T W y + b^T X^T W X b
+ * </pre>
+ *
+ * so no point is visited again. Bootstrap replicates weight every point by
+ * how often it was drawn, rather than building a resampled list, and run on
+ * the common fork-join pool with one SplittableRandom stream per replicate,
+ * so results depend only on the seed, not on scheduling.
+ */
+public class Resampling {
+
+	// points below which the fold pass runs on the current thread
+	private static final int SEQUENTIAL_POINTS = 1 << 15;
+
+	private final DataSet data;
+	private final DesignMatrixBuilder design;
+	private long seed = 42;
+
+	/**
+	 * Results of k-fold cross-validation
+	 */
+	public static class CrossValidation {
+		private final double[][] coefficients;
+		private final double[] sumSquares;
+		private final double[] weights;
+
+		CrossValidation(int folds) {
+			coefficients = new double[folds][];
+			sumSquares = new double[folds];
+			weights = new double[folds];
+		}
+
+		/**
+		 * Returns the number of folds
+		 */
+		public int folds() {
+			return coefficients.length;
+		}
+
+		/**
+		 * Returns the coefficients fitted without one fold, or null if that
+		 * training set was singular
+		 */
+		public double[] coefficients(int fold) {
+			return coefficients[fold];
+		}
+
+		/**
+		 * Returns the weighted mean squared error on one held-out fold
+		 */
+		public double foldError(int fold) {
+			return sumSquares[fold] / weights[fold];
+		}
+
+		/**
+		 * Returns the weighted mean squared prediction error over every
+		 * held-out point
+		 */
+		public double meanSquaredError() {
+			double sum = 0;
+			double weight = 0;
+			for (int f = 0; f < sumSquares.length; f++) {
+				if (coefficients[f] != null) {
+					sum += sumSquares[f];
+					weight += weights[f];
+				}
+			}
+			return weight == 0 ? Double.NaN : sum / weight;
+		}
+
+		public double rootMeanSquaredError() {
+			return Math.sqrt(meanSquaredError());
+		}
+	}
+
+	/**
+	 * Coefficients of every bootstrap replicate, with the full-data fit
+	 */
+	public static class Bootstrap {
+		private final DesignMatrixBuilder design;
+		private final double[] estimate;
+		// replicate r, coefficient i at samples[r * features + i]; NaN rows
+		// mark singular replicates
+		private final double[] samples;
+		private final int replicates;
+		private final int features;
+		// residual variance of a point of average weight about the full fit
+		private final double noiseVariance;
+
+		Bootstrap(DesignMatrixBuilder design, double[] estimate, int replicates, double noiseVariance) {
+			this.design = design;
+			this.estimate = estimate;
+			this.replicates = replicates;
+			this.features = estimate.length;
+			this.samples = new double[replicates * features];
+			this.noiseVariance = noiseVariance;
+		}
+
+		/**
+		 * Returns the number of replicates
+		 */
+		public int replicates() {
+			return replicates;
+		}
+
+		/**
+		 * Returns the coefficients fitted to all of the data
+		 */
+		public double[] estimate() {
+			return estimate.clone();
+		}
+
+		/**
+		 * Returns coefficient i of replicate r, NaN if the replicate was
+		 * singular
+		 */
+		public double sample(int r, int i) {
+			return samples[r * features + i];
+		}
+
+		/**
+		 * Returns the bootstrap standard error of coefficient i
+		 */
+		public double standardError(int i) {
+			// Welford over the valid replicates
+			long count = 0;
+			double mean = 0;
+			double sum = 0;
+			for (int r = 0; r < replicates; r++) {
+				double value = samples[r * features + i];
+				if (Double.isNaN(value)) {
+					continue;
+				}
+				count++;
+				double delta = value - mean;
+				mean += delta / count;
+				sum += delta * (value - mean);
+			}
+			return count < 2 ? Double.NaN : Math.sqrt(sum / (count - 1));
+		}
+
+		/**
+		 * Returns the percentile confidence interval of coefficient i, e.g.
+		 * confidence 0.95 for the 2.5th to 97.5th percentiles
+		 */
+		public double[] interval(int i, double confidence) {
+			double[] values = new double[replicates];
+			int count = 0;
+			for (int r = 0; r < replicates; r++) {
+				double value = samples[r * features + i];
+				if (!Double.isNaN(value)) {
+					values[count++] = value;
+				}
+			}
+			Arrays.sort(values, 0, count);
+			double tail = (1 - confidence) / 2;
+			return new double[] { quantile(values, count, tail), quantile(values, count, 1 - tail) };
+		}
+
+		/**
+		 * Returns an interval expected to hold a new observation at x with the
+		 * given probability. Its width combines the bootstrap spread of the
+		 * fitted value with the residual noise of the full fit.
+		 */
+		public double[] predictionInterval(double x, double confidence) {
+			double[] row = new double[features];
+			design.expand(new double[] { x }, 0, row);
+			double fitted = 0;
+			for (int i = 0; i < features; i++) {
+				fitted += row[i] * estimate[i];
+			}
+
+			long count = 0;
+			double mean = 0;
+			double sum = 0;
+			for (int r = 0; r < replicates; r++) {
+				double value = 0;
+				for (int i = 0; i < features; i++) {
+					value += row[i] * samples[r * features + i];
+				}
+				if (Double.isNaN(value)) {
+					continue;
+				}
+				count++;
+				double delta = value - mean;
+				mean += delta / count;
+				sum += delta * (value - mean);
+			}
+			double fitVariance = count < 2 ? 0 : sum / (count - 1);
+			double half = normalQuantile((1 + confidence) / 2) * Math.sqrt(fitVariance + noiseVariance);
+			return new double[] { fitted - half, fitted + half };
+		}
+
+		/**
+		 * Linearly interpolated quantile of the first count sorted values
+		 */
+		private static double quantile(double[] sorted, int count, double p) {
+			if (count == 0) {
+				return Double.NaN;
+			}
+			double position = p * (count - 1);
+			int below = (int) Math.floor(position);
+			int above = Math.min(below + 1, count - 1);
+			double fraction = position - below;
+			return sorted[below] + fraction * (sorted[above] - sorted[below]);
+		}
+	}
+
+	/**
+	 * Constructor - resamples fits of a single-input design to a data set
+	 */
+	public Resampling(DataSet data, DesignMatrixBuilder design) {
+		if (design.inputs() != 1) {
+			throw new IllegalArgumentException("A data set only supplies one input, design has " + design.inputs());
+		}
+		this.data = data;
+		this.design = design;
+	}
+
+	/**
+	 * Constructor - resamples the line y = m*x + b
+	 */
+	public Resampling(DataSet data) {
+		this(data, new DesignMatrixBuilder(1));
+	}
+
+	/**
+	 * Sets the seed of the fold assignment and bootstrap draws
+	 */
+	public Resampling seed(long seed) {
+		this.seed = seed;
+		return this;
+	}
+
+	/**
+	 * Runs k-fold cross-validation, assigning points to folds of equal size
+	 * at random
+	 */
+	public CrossValidation crossValidate(int folds) {
+		int n = data.size();
+		if (folds < 2 || folds > n) {
+			throw new IllegalArgumentException("Need 2 to " + n + " folds, was " + folds);
+		}
+
+		// shuffle the points, then deal them out to the folds in turn
+		int[] order = new int[n];
+		for (int i = 0; i < n; i++) {
+			order[i] = i;
+		}
+		SplittableRandom random = new SplittableRandom(seed);
+		for (int i = n - 1; i > 0; i--) {
+			int j = random.nextInt(i + 1);
+			int temp = order[i];
+			order[i] = order[j];
+			order[j] = temp;
+		}
+		int[] foldOf = new int[n];
+		for (int i = 0; i < n; i++) {
+			foldOf[order[i]] = i % folds;
+		}
+
+		FoldTask task = new FoldTask(foldOf, folds, 0, n);
+		NormalEquations[] perFold = n <= SEQUENTIAL_POINTS ? task.compute() : ForkJoinPool.commonPool().invoke(task);
+		NormalEquations total = design.newNormalEquations();
+		for (NormalEquations fold : perFold) {
+			total.merge(fold);
+		}
+
+		CrossValidation response = new CrossValidation(folds);
+		NormalEquations train = design.newNormalEquations();
+		CholeskySolver factor = new CholeskySolver(design.features());
+		for (int f = 0; f < folds; f++) {
+			train.set(total);
+			train.subtract(perFold[f]);
+			double[] coefficients = solve(train, factor);
+			response.weights[f] = perFold[f].weight();
+			if (coefficients == null) {
+				response.sumSquares[f] = Double.NaN;
+				continue;
+			}
+			response.coefficients[f] = coefficients;
+			response.sumSquares[f] = sumSquares(perFold[f], coefficients);
+		}
+		return response;
+	}
+
+	/**
+	 * Fits the model to the given number of bootstrap resamples of the data
+	 *
+	 * @return the replicates, or null if the full data fit is singular
+	 */
+	public Bootstrap bootstrap(int replicates) {
+		if (replicates < 1) {
+			throw new IllegalArgumentException("Need at least one replicate, was " + replicates);
+		}
+		NormalEquations full = design.newNormalEquations();
+		design.accumulate(data, full);
+		double[] estimate = solve(full, new CholeskySolver(design.features()));
+		if (estimate == null) {
+			return null;
+		}
+		int n = data.size();
+		double freedom = n - estimate.length;
+		double noise = freedom > 0 ? sumSquares(full, estimate) / (full.weight() * freedom / n) : 0;
+		Bootstrap response = new Bootstrap(design, estimate, replicates, noise);
+
+		// split up front so each replicate's stream is fixed by the seed alone
+		SplittableRandom root = new SplittableRandom(seed);
+		SplittableRandom[] streams = new SplittableRandom[replicates];
+		for (int r = 0; r < replicates; r++) {
+			streams[r] = root.split();
+		}
+		ForkJoinPool.commonPool().invoke(new BootstrapTask(response, streams, 0, replicates));
+		return response;
+	}
+
+	/**
+	 * Solves a system with a reused factor
+	 *
+	 * @return the coefficients, or null if the system is singular
+	 */
+	private static double[] solve(NormalEquations normal, CholeskySolver factor) {
+		if (!factor.factor(normal)) {
+			return null;
+		}
+		double[] coefficients = new double[normal.size()];
+		for (int i = 0; i < coefficients.length; i++) {
+			coefficients[i] = normal.moment(i);
+		}
+		factor.solveInPlace(coefficients);
+		return coefficients;
+	}
+
+	/**
+	 * Weighted residual sum of squares of the rows in a system, from its sums
+	 * alone
+	 */
+	private static double sumSquares(NormalEquations rows, double[] b) {
+		int k = b.length;
+		double cross = 0;
+		double quadratic = 0;
+		for (int i = 0; i < k; i++) {
+			cross += b[i] * rows.moment(i);
+			double gb = 0;
+			for (int j = 0; j < k; j++) {
+				gb += rows.gram(i, j) * b[j];
+			}
+			quadratic += b[i] * gb;
+		}
+		return Math.max(0, rows.sumYY() - 2 * cross + quadratic);
+	}
+
+	/**
+	 * Accumulates the normal equations of every fold over points [from, to)
+	 */
+	private class FoldTask extends RecursiveTask<NormalEquations[]> {
+
+		private static final long serialVersionUID = 1L;
+
+		private final int[] foldOf;
+		private final int folds;
+		private final int from;
+		private final int to;
+
+		FoldTask(int[] foldOf, int folds, int from, int to) {
+			this.foldOf = foldOf;
+			this.folds = folds;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected NormalEquations[] compute() {
+			if (to - from > SEQUENTIAL_POINTS) {
+				int middle = (from + to) >>> 1;
+				FoldTask left = new FoldTask(foldOf, folds, from, middle);
+				left.fork();
+				NormalEquations[] right = new FoldTask(foldOf, folds, middle, to).compute();
+				NormalEquations[] response = left.join();
+				for (int f = 0; f < folds; f++) {
+					response[f].merge(right[f]);
+				}
+				return response;
+			}
+
+			NormalEquations[] response = new NormalEquations[folds];
+			for (int f = 0; f < folds; f++) {
+				response[f] = design.newNormalEquations();
+			}
+			double[] features = new double[design.features()];
+			double[] xs = data.xs();
+			double[] ys = data.ys();
+			double[] weights = data.weights();
+			int start = data.offset();
+			for (int i = from; i < to; i++) {
+				design.expand(xs, start + i, features);
+				response[foldOf[i]].add(features, ys[start + i], weights == null ? 1 : weights[start + i]);
+			}
+			return response;
+		}
+	}
+
+	/**
+	 * Fits replicates [first, last), with one set of buffers per leaf
+	 */
+	private class BootstrapTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final Bootstrap result;
+		private final SplittableRandom[] streams;
+		private final int first;
+		private final int last;
+
+		BootstrapTask(Bootstrap result, SplittableRandom[] streams, int first, int last) {
+			this.result = result;
+			this.streams = streams;
+			this.first = first;
+			this.last = last;
+		}
+
+		@Override
+		protected void compute() {
+			int n = data.size();
+			if (last - first > 1 && (long) (last - first) * n > SEQUENTIAL_POINTS) {
+				int middle = (first + last) >>> 1;
+				invokeAll(new BootstrapTask(result, streams, first, middle),
+						new BootstrapTask(result, streams, middle, last));
+				return;
+			}
+
+			int[] draws = new int[n];
+			double[] features = new double[design.features()];
+			NormalEquations normal = design.newNormalEquations();
+			CholeskySolver factor = new CholeskySolver(design.features());
+			double[] xs = data.xs();
+			double[] ys = data.ys();
+			double[] weights = data.weights();
+			int start = data.offset();
+			int k = result.features;
+
+			for (int r = first; r < last; r++) {
+				SplittableRandom random = streams[r];
+				Arrays.fill(draws, 0);
+				for (int d = 0; d < n; d++) {
+					draws[random.nextInt(n)]++;
+				}
+				normal.clear();
+				for (int i = 0; i < n; i++) {
+					if (draws[i] == 0) {
+						continue;
+					}
+					double w = draws[i] * (weights == null ? 1 : weights[start + i]);
+					design.expand(xs, start + i, features);
+					normal.add(features, ys[start + i], w);
+				}
+
+				double[] coefficients = solve(normal, factor);
+				for (int i = 0; i < k; i++) {
+					result.samples[r * k + i] = coefficients == null ? Double.NaN : coefficients[i];
+				}
+			}
+		}
+	}
+
+	/**
+	 * Inverse of the standard normal distribution function, by Acklam's
+	 * rational approximation (relative error below 1.2E-9)
+	 */
+	public static double normalQuantile(double p) {
+		if (!(p > 0 && p < 1)) {
+			if (p == 0) {
+				return Double.NEGATIVE_INFINITY;
+			}
+			if (p == 1) {
+				return Double.POSITIVE_INFINITY;
+			}
+			throw new IllegalArgumentException("Probability must be in [0, 1], was " + p);
+		}
+		final double[] a = { -3.969683028665376E1, 2.209460984245205E2, -2.759285104469687E2,
+				1.383577518672690E2, -3.066479806614716E1, 2.506628277459239 };
+		final double[] b = { -5.447609879822406E1, 1.615858368580409E2, -1.556989798598866E2,
+				6.680131188771972E1, -1.328068155288572E1 };
+		final double[] c = { -7.784894002430293E-3, -3.223964580411365E-1, -2.400758277161838,
+				-2.549732539343734, 4.374664141464968, 2.938163982698783 };
+		final double[] d = { 7.784695709041462E-3, 3.224671290700398E-1, 2.445134137142996,
+				3.754408661907416 };
+		double low = 0.02425;
+
+		if (p < low) {
+			double q = Math.sqrt(-2 * Math.log(p));
+			return (((((c[0] * q + c[1]) * q + c[2]) * q + c[3]) * q + c[4]) * q + c[5])
+					/ ((((d[0] * q + d[1]) * q + d[2]) * q + d[3]) * q + 1);
+		}
+		if (p > 1 - low) {
+			double q = Math.sqrt(-2 * Math.log(1 - p));
+			return -(((((c[0] * q + c[1]) * q + c[2]) * q + c[3]) * q + c[4]) * q + c[5])
+					/ ((((d[0] * q + d[1]) * q + d[2]) * q + d[3]) * q + 1);
+		}
+		double q = p - 0.5;
+		double r = q * q;
+		return (((((a[0] * r + a[1]) * r + a[2]) * r + a[3]) * r + a[4]) * r + a[5]) * q
+				/ (((((b[0] * r + b[1]) * r + b[2]) * r + b[3]) * r + b[4]) * r + 1);
+	}
+}
@@ -0,0 +1,218 @@
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Goodness-of-fit numbers for a line y = m*x + b over a data set, all
+ * computed in one fused pass over the point columns: vertical and orthogonal
+ * sums of squares, chi squared, R squared and RMSE. Large data sets are split
+ * across the common fork-join pool.
+ *
+ * Vertical residuals are r = y - (m*x + b). Chi squared is the weighted sum
+ * sum(w * r^2), which is the plain sum of squares when the data carry no
+ * weights. The orthogonal residual is the perpendicular distance from the
+ * point to the line, |r| / sqrt(1 + m^2).
+ */
+public class Residuals {
+
+	// below this many points a single thread is faster than forking
+	private static final int PARALLEL_THRESHOLD = 1 << 16;
+
+	private final double slope;
+	private final double intercept;
+	private long count;
+	private double weight;
+	private double sumSquares;
+	private double chiSquared;
+	private double orthogonalSumSquares;
+	// weighted mean of y and sum of w * (y - mean)^2, for R squared
+	private double meanY;
+	private double totalSumSquares;
+
+	private Residuals(double slope, double intercept) {
+		this.slope = slope;
+		this.intercept = intercept;
+	}
+
+	/**
+	 * Evaluates a line against every point of a data set
+	 */
+	public static Residuals compute(DataSet data, double slope, double intercept) {
+		if (data.size() < PARALLEL_THRESHOLD) {
+			return range(data, slope, intercept, 0, data.size());
+		}
+		return ForkJoinPool.commonPool().invoke(new RangeTask(data, slope, intercept, 0, data.size()));
+	}
+
+	/**
+	 * Writes the vertical and orthogonal residual of every point into the
+	 * given arrays; either may be null
+	 */
+	public static void residuals(DataSet data, double slope, double intercept, double[] vertical,
+			double[] orthogonal) {
+		double[] xs = data.xs();
+		double[] ys = data.ys();
+		int start = data.offset();
+		double scale = 1 / Math.sqrt(1 + slope * slope);
+		for (int i = 0; i < data.size(); i++) {
+			double r = ys[start + i] - (slope * xs[start + i] + intercept);
+			if (vertical != null) {
+				vertical[i] = r;
+			}
+			if (orthogonal != null) {
+				orthogonal[i] = Math.abs(r) * scale;
+			}
+		}
+	}
+
+	/**
+	 * Single-threaded pass over points [from, to)
+	 */
+	private static Residuals range(DataSet data, double slope, double intercept, int from, int to) {
+		double[] xs = data.xs();
+		double[] ys = data.ys();
+		double[] weights = data.weights();
+		int start = data.offset();
+
+		double weight = 0;
+		double sumSquares = 0;
+		double chiSquared = 0;
+		double meanY = 0;
+		double totalSumSquares = 0;
+		for (int i = start + from; i < start + to; i++) {
+			double w = weights == null ? 1 : weights[i];
+			double y = ys[i];
+			double r = y - (slope * xs[i] + intercept);
+			double squared = r * r;
+			sumSquares += squared;
+			chiSquared += w * squared;
+
+			// weighted Welford update for the spread of y
+			weight += w;
+			if (weight > 0) {
+				double dy = y - meanY;
+				meanY += dy * w / weight;
+				totalSumSquares += w * dy * (y - meanY);
+			}
+		}
+
+		Residuals response = new Residuals(slope, intercept);
+		response.count = to - from;
+		response.weight = weight;
+		response.sumSquares = sumSquares;
+		response.chiSquared = chiSquared;
+		response.orthogonalSumSquares = chiSquared / (1 + slope * slope);
+		response.meanY = meanY;
+		response.totalSumSquares = totalSumSquares;
+		return response;
+	}
+
+	/**
+	 * Combines the results of two disjoint ranges
+	 */
+	private Residuals merge(Residuals other) {
+		Residuals response = new Residuals(slope, intercept);
+		response.count = count + other.count;
+		response.weight = weight + other.weight;
+		response.sumSquares = sumSquares + other.sumSquares;
+		response.chiSquared = chiSquared + other.chiSquared;
+		response.orthogonalSumSquares = orthogonalSumSquares + other.orthogonalSumSquares;
+		if (response.weight > 0) {
+			double dy = other.meanY - meanY;
+			response.meanY = meanY + dy * other.weight / response.weight;
+			response.totalSumSquares = totalSumSquares + other.totalSumSquares
+					+ dy * dy * weight * other.weight / response.weight;
+		}
+		return response;
+	}
+
+	/**
+	 * @return slope of the evaluated line
+	 */
+	public double slope() {
+		return slope;
+	}
+
+	/**
+	 * @return y intercept of the evaluated line
+	 */
+	public double intercept() {
+		return intercept;
+	}
+
+	/**
+	 * Returns the number of points
+	 */
+	public long count() {
+		return count;
+	}
+
+	/**
+	 * Returns the unweighted sum of squared vertical residuals
+	 */
+	public double sumSquares() {
+		return sumSquares;
+	}
+
+	/**
+	 * Returns the weighted sum of squared vertical residuals
+	 */
+	public double chiSquared() {
+		return chiSquared;
+	}
+
+	/**
+	 * Returns the weighted sum of squared perpendicular distances to the line
+	 */
+	public double orthogonalSumSquares() {
+		return orthogonalSumSquares;
+	}
+
+	/**
+	 * Returns the fraction of the weighted variance of y explained by the
+	 * line, NaN if y never varies
+	 */
+	public double rSquared() {
+		if (totalSumSquares == 0) {
+			return Double.NaN;
+		}
+		return 1 - chiSquared / totalSumSquares;
+	}
+
+	/**
+	 * Returns the root mean square vertical residual
+	 */
+	public double rmse() {
+		return count == 0 ? Double.NaN : Math.sqrt(sumSquares / count);
+	}
+
+	private static class RangeTask extends RecursiveTask<Residuals> {
+
+		private static final long serialVersionUID = 1L;
+
+		private final DataSet data;
+		private final double slope;
+		private final double intercept;
+		private final int from;
+		private final int to;
+
+		RangeTask(DataSet data, double slope, double intercept, int from, int to) {
+			this.data = data;
+			this.slope = slope;
+			this.intercept = intercept;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected Residuals compute() {
+			if (to - from <= PARALLEL_THRESHOLD) {
+				return range(data, slope, intercept, from, to);
+			}
+			int middle = (from + to) >>> 1;
+			RangeTask left = new RangeTask(data, slope, intercept, from, middle);
+			left.fork();
+			Residuals right = new RangeTask(data, slope, intercept, middle, to).compute();
+			return left.join().merge(right);
+		}
+	}
+}
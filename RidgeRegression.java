@@ -0,0 +1,228 @@
+/**
+ * Ridge (Tikhonov) regression, minimizing |y - Xb|^2 + lambda |b|^2 over a
+ * whole grid of lambda values at the cost of about one fit. The centered
+ * normal matrix is eigendecomposed once, X^T X = V diag(d) V^T, after which
+ *
+ * <pre>
+ * b(lambda) = V diag(1 / (d + lambda)) V^T X^T y
+ * </pre>
+ *
+ * costs O(k^2) per lambda, and the residual sum of squares, effective
+ * degrees of freedom and generalized cross-validation score each cost
+ * O(k).
+ *
+ * The intercept, if the design has one, is not penalized: the other
+ * features and y are centered on their weighted means, which the normal
+ * equations already hold, and the intercept is recovered from the means.
+ */
+public class RidgeRegression {
+
+	private final int features;
+	private final int interceptIndex;
+	private final long count;
+	private final double weight;
+	// indices of the penalized features, in order
+	private final int[] penalized;
+	// means of the penalized features and y, when there is an intercept
+	private final double[] means;
+	private final double meanY;
+	private final double centeredYY;
+	private final EigenDecomposition eigen;
+	private final double[] eigenvalues;
+	// V^T X^T y, the moment in the eigenbasis
+	private final double[] rotatedMoment;
+
+	/**
+	 * Constructor - prepares the lambda path for accumulated normal equations
+	 * of the given design
+	 */
+	public RidgeRegression(NormalEquations normal, DesignMatrixBuilder design) {
+		if (normal.size() != design.features()) {
+			throw new IllegalArgumentException("System has " + normal.size() + " features, design has "
+					+ design.features());
+		}
+		features = normal.size();
+		interceptIndex = design.interceptIndex();
+		count = normal.count();
+		weight = normal.weight();
+
+		int k = interceptIndex >= 0 ? features - 1 : features;
+		penalized = new int[k];
+		for (int i = 0, at = 0; i < features; i++) {
+			if (i != interceptIndex) {
+				penalized[at++] = i;
+			}
+		}
+
+		// center on the weighted means: G - W m m^T, X^T y - W m meanY
+		means = new double[k];
+		double sumY = 0;
+		if (interceptIndex >= 0 && weight > 0) {
+			for (int i = 0; i < k; i++) {
+				means[i] = normal.gram(penalized[i], interceptIndex) / weight;
+			}
+			sumY = normal.moment(interceptIndex);
+		}
+		meanY = weight > 0 ? sumY / weight : 0;
+		centeredYY = normal.sumYY() - sumY * meanY;
+
+		Matrix gram = new Matrix(k, k);
+		double[] moment = new double[k];
+		for (int i = 0; i < k; i++) {
+			for (int j = i; j < k; j++) {
+				gram.set(normal.gram(penalized[i], penalized[j]) - weight * means[i] * means[j], i, j);
+			}
+			moment[i] = normal.moment(penalized[i]) - weight * means[i] * meanY;
+		}
+
+		eigen = new EigenDecomposition(gram);
+		eigenvalues = eigen.eigenvalues();
+		rotatedMoment = new double[k];
+		for (int j = 0; j < k; j++) {
+			double sum = 0;
+			for (int i = 0; i < k; i++) {
+				sum += eigen.vector(i, j) * moment[i];
+			}
+			rotatedMoment[j] = sum;
+		}
+	}
+
+	/**
+	 * Returns evenly spaced lambdas on a log scale from min to max
+	 */
+	public static double[] logGrid(double min, double max, int count) {
+		if (!(min > 0) || !(max >= min) || count < 1) {
+			throw new IllegalArgumentException("Bad grid " + min + ".." + max + " x" + count);
+		}
+		double[] response = new double[count];
+		double step = count == 1 ? 0 : Math.log(max / min) / (count - 1);
+		for (int i = 0; i < count; i++) {
+			response[i] = min * Math.exp(step * i);
+		}
+		return response;
+	}
+
+	/**
+	 * Returns the coefficients for one lambda, in feature order
+	 */
+	public double[] coefficients(double lambda) {
+		double[] response = new double[features];
+		coefficients(lambda, response, new double[penalized.length]);
+		return response;
+	}
+
+	/**
+	 * Writes the coefficients for one lambda into out, in feature order,
+	 * using scratch (one entry per penalized feature) instead of allocating
+	 */
+	public void coefficients(double lambda, double[] out, double[] scratch) {
+		int k = penalized.length;
+		for (int j = 0; j < k; j++) {
+			scratch[j] = rotatedMoment[j] / (eigenvalues[j] + lambda);
+		}
+		double intercept = meanY;
+		for (int i = 0; i < k; i++) {
+			double sum = 0;
+			for (int j = 0; j < k; j++) {
+				sum += eigen.vector(i, j) * scratch[j];
+			}
+			out[penalized[i]] = sum;
+			intercept -= means[i] * sum;
+		}
+		if (interceptIndex >= 0) {
+			out[interceptIndex] = intercept;
+		}
+	}
+
+	/**
+	 * Returns the weighted residual sum of squares for one lambda
+	 */
+	public double residualSumSquares(double lambda) {
+		// yy - 2 b.m + b.G.b, with b_j = z_j / (d_j + lambda) in the eigenbasis
+		double explained = 0;
+		for (int j = 0; j < penalized.length; j++) {
+			double shrink = eigenvalues[j] + lambda;
+			if (shrink == 0) {
+				continue;
+			}
+			double z = rotatedMoment[j];
+			explained += z * z * (eigenvalues[j] + 2 * lambda) / (shrink * shrink);
+		}
+		return Math.max(0, centeredYY - explained);
+	}
+
+	/**
+	 * Returns the effective number of parameters, the trace of the hat
+	 * matrix, counting the intercept as one
+	 */
+	public double degreesOfFreedom(double lambda) {
+		double df = interceptIndex >= 0 ? 1 : 0;
+		for (double d : eigenvalues) {
+			if (d + lambda > 0) {
+				df += d / (d + lambda);
+			}
+		}
+		return df;
+	}
+
+	/**
+	 * Returns the generalized cross-validation score (RSS / n) / (1 - df /
+	 * n)^2, an estimate of the leave-one-out prediction error. Infinite when
+	 * the fit has as many effective parameters as points.
+	 */
+	public double gcv(double lambda) {
+		double n = count;
+		double remaining = 1 - degreesOfFreedom(lambda) / n;
+		if (!(remaining > 0)) {
+			return Double.POSITIVE_INFINITY;
+		}
+		return residualSumSquares(lambda) / n / (remaining * remaining);
+	}
+
+	/**
+	 * Returns the GCV score of every lambda in a grid
+	 */
+	public double[] gcv(double[] lambdas) {
+		double[] response = new double[lambdas.length];
+		for (int i = 0; i < lambdas.length; i++) {
+			response[i] = gcv(lambdas[i]);
+		}
+		return response;
+	}
+
+	/**
+	 * Returns the lambda of a grid with the lowest GCV score
+	 */
+	public double bestLambda(double[] lambdas) {
+		double best = lambdas[0];
+		double bestScore = Double.POSITIVE_INFINITY;
+		for (double lambda : lambdas) {
+			double score = gcv(lambda);
+			if (score < bestScore) {
+				bestScore = score;
+				best = lambda;
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * Returns the coefficients for every lambda of a grid, one row per
+	 * lambda
+	 */
+	public double[][] path(double[] lambdas) {
+		double[][] response = new double[lambdas.length][features];
+		double[] scratch = new double[penalized.length];
+		for (int i = 0; i < lambdas.length; i++) {
+			coefficients(lambdas[i], response[i], scratch);
+		}
+		return response;
+	}
+
+	/**
+	 * Returns the eigenvalues of the centered normal matrix
+	 */
+	public double[] eigenvalues() {
+		return eigenvalues.clone();
+	}
+}
@@ -0,0 +1,361 @@
+/**
+ * Fits a linear model with iteratively reweighted least squares, so a few
+ * wild points cannot drag the fit the way they drag ordinary least squares.
+ * Each iteration standardizes the residuals by the data weights (r*sqrt(w),
+ * so a residual is measured in its own sigmas), scales them by a robust
+ * estimate of their spread (the median absolute standardized residual /
+ * 0.6745), weights every point by the loss function times its data weight,
+ * and refits.
+ *
+ * The normal equations, Cholesky factor, coefficient and residual buffers
+ * are allocated once and refilled on every iteration and every fit, so an
+ * iteration is two passes over the data columns and no allocation. Fitting
+ * stops as soon as no coefficient moves by more than the tolerance.
+ */
+public class RobustRegression {
+
+	// the median absolute deviation of a unit normal
+	private static final double MAD_SCALE = 0.6745;
+
+	/**
+	 * Weight functions, each with the usual tuning constant for 95%
+	 * efficiency on normally distributed errors
+	 */
+	public enum Loss {
+		/**
+		 * Full weight near the line, falling off as 1/|u| beyond it
+		 */
+		HUBER(1.345),
+		/**
+		 * Tukey's bisquare: weight falls smoothly to zero, so gross outliers
+		 * are ignored entirely
+		 */
+		TUKEY(4.685);
+
+		private final double tuning;
+
+		Loss(double tuning) {
+			this.tuning = tuning;
+		}
+
+		public double tuning() {
+			return tuning;
+		}
+
+		/**
+		 * Returns the weight of a residual u, in units of the residual scale,
+		 * for tuning constant k
+		 */
+		public double weight(double u, double k) {
+			double size = Math.abs(u);
+			if (this == HUBER) {
+				return size <= k ? 1 : k / size;
+			}
+			if (size >= k) {
+				return 0;
+			}
+			double t = u / k;
+			double w = 1 - t * t;
+			return w * w;
+		}
+	}
+
+	private final DesignMatrixBuilder design;
+	private final Loss loss;
+	private double tuning;
+	private int maxIterations = 50;
+	private double tolerance = 1E-8;
+
+	private final NormalEquations normal;
+	private final CholeskySolver factor;
+	private final double[] features;
+	private final double[] coefficients;
+	private final double[] previous;
+	private double[] residuals = new double[0];
+	private double[] scratch = new double[0];
+
+	private int iterations;
+	private boolean converged;
+	private double scale;
+
+	/**
+	 * Constructor - robust fits of a single-input design with the given loss
+	 */
+	public RobustRegression(DesignMatrixBuilder design, Loss loss) {
+		if (design.inputs() != 1) {
+			throw new IllegalArgumentException("A data set only supplies one input, design has " + design.inputs());
+		}
+		this.design = design;
+		this.loss = loss;
+		this.tuning = loss.tuning();
+		normal = design.newNormalEquations();
+		factor = new CholeskySolver(design.features());
+		features = new double[design.features()];
+		coefficients = new double[design.features()];
+		previous = new double[design.features()];
+	}
+
+	/**
+	 * Constructor - robust line y = m*x + b with the given loss
+	 */
+	public RobustRegression(Loss loss) {
+		this(new DesignMatrixBuilder(1), loss);
+	}
+
+	/**
+	 * Sets the loss tuning constant; smaller values reject more points
+	 */
+	public RobustRegression tuning(double tuning) {
+		if (!(tuning > 0)) {
+			throw new IllegalArgumentException("Tuning must be positive, was " + tuning);
+		}
+		this.tuning = tuning;
+		return this;
+	}
+
+	/**
+	 * Sets the most reweighting iterations a fit may take
+	 */
+	public RobustRegression maxIterations(int maxIterations) {
+		this.maxIterations = maxIterations;
+		return this;
+	}
+
+	/**
+	 * Sets the largest change in any coefficient, relative to its size,
+	 * that counts as converged
+	 */
+	public RobustRegression tolerance(double tolerance) {
+		this.tolerance = tolerance;
+		return this;
+	}
+
+	/**
+	 * Fits the data set, starting from the ordinary weighted least-squares
+	 * fit. Weights carried by the data multiply the robust weights.
+	 *
+	 * @return the coefficients in feature order, or null if even the
+	 *         ordinary fit is singular. The array is reused by the next fit.
+	 */
+	public double[] fit(DataSet data) {
+		int n = data.size();
+		if (residuals.length < n) {
+			residuals = new double[n];
+			scratch = new double[n];
+		}
+		iterations = 0;
+		converged = false;
+		scale = Double.NaN;
+
+		normal.clear();
+		design.accumulate(data, normal);
+		if (!solve()) {
+			return null;
+		}
+
+		while (iterations < maxIterations) {
+			scale = computeResiduals(data) / MAD_SCALE;
+			if (scale == 0) {
+				// at least half the points lie on the fit already
+				converged = true;
+				break;
+			}
+
+			System.arraycopy(coefficients, 0, previous, 0, coefficients.length);
+			reweight(data);
+			iterations++;
+			if (!solve()) {
+				// every point rejected or the rest degenerate; keep the last fit
+				System.arraycopy(previous, 0, coefficients, 0, coefficients.length);
+				break;
+			}
+
+			if (hasConverged()) {
+				converged = true;
+				break;
+			}
+		}
+		return coefficients;
+	}
+
+	/**
+	 * Fills residuals with the residuals standardized by the data weights and
+	 * returns their median absolute value. Points of zero weight are left out
+	 * of the median.
+	 */
+	private double computeResiduals(DataSet data) {
+		double[] xs = data.xs();
+		double[] ys = data.ys();
+		double[] weights = data.weights();
+		int start = data.offset();
+		int n = data.size();
+		int counted = 0;
+		for (int i = 0; i < n; i++) {
+			design.expand(xs, start + i, features);
+			double fitted = 0;
+			for (int j = 0; j < features.length; j++) {
+				fitted += features[j] * coefficients[j];
+			}
+			double w = weights == null ? 1 : weights[start + i];
+			double r = (ys[start + i] - fitted) * Math.sqrt(w);
+			residuals[i] = r;
+			if (w > 0) {
+				scratch[counted++] = Math.abs(r);
+			}
+		}
+		return median(scratch, counted);
+	}
+
+	private void reweight(DataSet data) {
+		double[] xs = data.xs();
+		double[] ys = data.ys();
+		double[] weights = data.weights();
+		int start = data.offset();
+		normal.clear();
+		for (int i = 0, n = data.size(); i < n; i++) {
+			double w = loss.weight(residuals[i] / scale, tuning);
+			if (weights != null) {
+				w *= weights[start + i];
+			}
+			if (w > 0) {
+				design.expand(xs, start + i, features);
+				normal.add(features, ys[start + i], w);
+			}
+		}
+	}
+
+	private boolean solve() {
+		if (!factor.factor(normal)) {
+			return false;
+		}
+		for (int i = 0; i < coefficients.length; i++) {
+			coefficients[i] = normal.moment(i);
+		}
+		return factor.solveInPlace(coefficients);
+	}
+
+	private boolean hasConverged() {
+		for (int i = 0; i < coefficients.length; i++) {
+			double change = Math.abs(coefficients[i] - previous[i]);
+			if (change > tolerance * Math.max(1, Math.abs(previous[i]))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Median of the first n values, found with quickselect. Reorders the
+	 * values.
+	 */
+	static double median(double[] values, int n) {
+		if (n == 0) {
+			return Double.NaN;
+		}
+		int middle = n / 2;
+		double upper = select(values, n, middle);
+		if (n % 2 == 1) {
+			return upper;
+		}
+		// everything left of middle is now <= upper; the largest is the other half
+		double lower = values[0];
+		for (int i = 1; i < middle; i++) {
+			lower = Math.max(lower, values[i]);
+		}
+		return (lower + upper) / 2;
+	}
+
+	/**
+	 * Moves the k-th smallest of the first n values to index k, with smaller
+	 * values before it and larger after, and returns it
+	 */
+	private static double select(double[] values, int n, int k) {
+		int left = 0;
+		int right = n - 1;
+		while (left < right) {
+			// median of three pivot guards against sorted input
+			int mid = (left + right) >>> 1;
+			if (values[mid] < values[left]) {
+				swap(values, mid, left);
+			}
+			if (values[right] < values[left]) {
+				swap(values, right, left);
+			}
+			if (values[right] < values[mid]) {
+				swap(values, right, mid);
+			}
+			double pivot = values[mid];
+
+			int i = left;
+			int j = right;
+			while (i <= j) {
+				while (values[i] < pivot) {
+					i++;
+				}
+				while (values[j] > pivot) {
+					j--;
+				}
+				if (i <= j) {
+					swap(values, i, j);
+					i++;
+					j--;
+				}
+			}
+			if (k <= j) {
+				right = j;
+			} else if (k >= i) {
+				left = i;
+			} else {
+				break;
+			}
+		}
+		return values[k];
+	}
+
+	private static void swap(double[] values, int i, int j) {
+		double temp = values[i];
+		values[i] = values[j];
+		values[j] = temp;
+	}
+
+	/**
+	 * Returns the coefficients of the last fit, in feature order
+	 */
+	public double[] coefficients() {
+		return coefficients;
+	}
+
+	public double coefficient(int i) {
+		return coefficients[i];
+	}
+
+	/**
+	 * Returns the number of reweighting iterations the last fit took
+	 */
+	public int iterations() {
+		return iterations;
+	}
+
+	/**
+	 * Returns true if the last fit met the tolerance before running out of
+	 * iterations
+	 */
+	public boolean isConverged() {
+		return converged;
+	}
+
+	/**
+	 * Returns the robust residual scale of the last iteration
+	 */
+	public double scale() {
+		return scale;
+	}
+
+	/**
+	 * Returns the robust weight the last fit gave point i from its
+	 * standardized residual, not counting any weight carried by the data
+	 */
+	public double weight(int i) {
+		return loss.weight(residuals[i] / scale, tuning);
+	}
+}
@@ -0,0 +1,12 @@
+/**
+ * Receives the numeric fields of each data row, for files with more than
+ * two columns
+ */
+public interface RowConsumer {
+
+	/**
+	 * Called once per row. The array is reused between calls and may be
+	 * longer than count, so copy anything that must be kept.
+	 */
+	void accept(double[] fields, int count);
+}
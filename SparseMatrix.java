@@ -0,0 +1,369 @@
+import java.util.Arrays;
+
+/**
+ * Sparse matrix in compressed sparse row (CSR) form, for design matrices
+ * such as one-hot encodings where each row has only a few nonzeros among
+ * very many columns. Storage and every product cost O(nonzeros), never
+ * O(rows * columns).
+ *
+ * The nonzeros of row i are values[rowStarts[i] .. rowStarts[i + 1]), in
+ * the columns given by the same range of columnIndices, sorted ascending.
+ * Products with dense vectors write into caller-owned arrays, so the
+ * iterative solvers can run without allocating.
+ */
+public class SparseMatrix {
+
+	private final int rows;
+	private final int columns;
+	private final int[] rowStarts;
+	private final int[] columnIndices;
+	private final double[] values;
+
+	/**
+	 * Builds a sparse matrix one row at a time
+	 */
+	public static class Builder {
+		private final int columns;
+		private int rows;
+		private int[] rowStarts = new int[16];
+		private int[] columnIndices = new int[16];
+		private double[] values = new double[16];
+		private int nonZeros;
+		// start of the row being built
+		private int rowStart;
+
+		/**
+		 * Constructor - rows will have the given number of columns
+		 */
+		public Builder(int columns) {
+			this.columns = columns;
+		}
+
+		/**
+		 * Sets an entry of the current row. Entries may come in any order;
+		 * repeats of a column are summed.
+		 */
+		public Builder add(int column, double value) {
+			if (column < 0 || column >= columns) {
+				throw new IllegalArgumentException("Column " + column + " outside 0.." + (columns - 1));
+			}
+			if (nonZeros == values.length) {
+				columnIndices = Arrays.copyOf(columnIndices, nonZeros * 2);
+				values = Arrays.copyOf(values, nonZeros * 2);
+			}
+			columnIndices[nonZeros] = column;
+			values[nonZeros] = value;
+			nonZeros++;
+			return this;
+		}
+
+		/**
+		 * Finishes the current row and starts the next
+		 */
+		public Builder endRow() {
+			nonZeros = rowStart + sortRow(columnIndices, values, rowStart, nonZeros);
+			if (rows + 2 > rowStarts.length) {
+				rowStarts = Arrays.copyOf(rowStarts, rowStarts.length * 2);
+			}
+			rows++;
+			rowStarts[rows] = nonZeros;
+			rowStart = nonZeros;
+			return this;
+		}
+
+		/**
+		 * Returns the matrix of every finished row
+		 */
+		public SparseMatrix build() {
+			return new SparseMatrix(rows, columns, Arrays.copyOf(rowStarts, rows + 1),
+					Arrays.copyOf(columnIndices, rowStart), Arrays.copyOf(values, rowStart));
+		}
+	}
+
+	/**
+	 * Constructor - wraps CSR arrays without copying them. Row starts must
+	 * begin at 0 and never decrease, and columns within each row must be in
+	 * range and strictly ascending.
+	 */
+	public SparseMatrix(int rows, int columns, int[] rowStarts, int[] columnIndices, double[] values) {
+		if (rows < 0 || columns < 0) {
+			throw new IllegalArgumentException("Bad shape " + rows + "x" + columns);
+		}
+		if (rowStarts.length != rows + 1) {
+			throw new IllegalArgumentException("Expected " + (rows + 1) + " row starts, found " + rowStarts.length);
+		}
+		if (rowStarts[0] != 0) {
+			throw new IllegalArgumentException("Row starts must begin at 0, was " + rowStarts[0]);
+		}
+		for (int i = 0; i < rows; i++) {
+			if (rowStarts[i + 1] < rowStarts[i]) {
+				throw new IllegalArgumentException("Row " + i + " ends before it starts");
+			}
+		}
+		if (columnIndices.length < rowStarts[rows] || values.length < rowStarts[rows]) {
+			throw new IllegalArgumentException("Fewer entries than the row starts describe");
+		}
+		for (int i = 0; i < rows; i++) {
+			for (int k = rowStarts[i]; k < rowStarts[i + 1]; k++) {
+				int column = columnIndices[k];
+				if (column < 0 || column >= columns) {
+					throw new IllegalArgumentException("Row " + i + " has column " + column + " outside 0.."
+							+ (columns - 1));
+				}
+				if (k > rowStarts[i] && column <= columnIndices[k - 1]) {
+					throw new IllegalArgumentException("Columns of row " + i + " are not ascending");
+				}
+			}
+		}
+		this.rows = rows;
+		this.columns = columns;
+		this.rowStarts = rowStarts;
+		this.columnIndices = columnIndices;
+		this.values = values;
+	}
+
+	/**
+	 * Builds a matrix from (row, column, value) triplets in any order.
+	 * Repeated positions are summed.
+	 */
+	public static SparseMatrix fromTriplets(int rows, int columns, int[] rowIndices, int[] columnIndices,
+			double[] values, int count) {
+		if (rows < 0 || columns < 0) {
+			throw new IllegalArgumentException("Bad shape " + rows + "x" + columns);
+		}
+		if (count < 0 || count > rowIndices.length || count > columnIndices.length || count > values.length) {
+			throw new IllegalArgumentException("Triplet count " + count + " exceeds the arrays");
+		}
+		for (int k = 0; k < count; k++) {
+			if (rowIndices[k] < 0 || rowIndices[k] >= rows || columnIndices[k] < 0 || columnIndices[k] >= columns) {
+				throw new IllegalArgumentException("Triplet " + k + " at (" + rowIndices[k] + ", " + columnIndices[k]
+						+ ") outside " + rows + "x" + columns);
+			}
+		}
+		// counting sort by row
+		int[] rowStarts = new int[rows + 1];
+		for (int k = 0; k < count; k++) {
+			rowStarts[rowIndices[k] + 1]++;
+		}
+		for (int i = 0; i < rows; i++) {
+			rowStarts[i + 1] += rowStarts[i];
+		}
+		int[] next = Arrays.copyOf(rowStarts, rows);
+		int[] sortedColumns = new int[count];
+		double[] sortedValues = new double[count];
+		for (int k = 0; k < count; k++) {
+			int at = next[rowIndices[k]]++;
+			sortedColumns[at] = columnIndices[k];
+			sortedValues[at] = values[k];
+		}
+
+		// sort each row by column and squeeze out the merged repeats
+		int write = 0;
+		for (int i = 0; i < rows; i++) {
+			int start = rowStarts[i];
+			int length = sortRow(sortedColumns, sortedValues, start, rowStarts[i + 1]);
+			System.arraycopy(sortedColumns, start, sortedColumns, write, length);
+			System.arraycopy(sortedValues, start, sortedValues, write, length);
+			rowStarts[i] = write;
+			write += length;
+		}
+		rowStarts[rows] = write;
+		return new SparseMatrix(rows, columns, rowStarts, sortedColumns, sortedValues);
+	}
+
+	/**
+	 * Copies the nonzeros of a dense matrix
+	 */
+	public static SparseMatrix of(Matrix dense) {
+		Builder builder = new Builder(dense.columns());
+		for (int i = 0; i < dense.rows(); i++) {
+			for (int j = 0; j < dense.columns(); j++) {
+				double value = dense.get(i, j);
+				if (value != 0) {
+					builder.add(j, value);
+				}
+			}
+			builder.endRow();
+		}
+		return builder.build();
+	}
+
+	/**
+	 * Sorts entries [from, to) by column with an insertion sort (rows are
+	 * short) and sums repeated columns
+	 *
+	 * @return the number of distinct columns, now at [from, from + count)
+	 */
+	private static int sortRow(int[] columns, double[] values, int from, int to) {
+		for (int i = from + 1; i < to; i++) {
+			int column = columns[i];
+			double value = values[i];
+			int j = i - 1;
+			while (j >= from && columns[j] > column) {
+				columns[j + 1] = columns[j];
+				values[j + 1] = values[j];
+				j--;
+			}
+			columns[j + 1] = column;
+			values[j + 1] = value;
+		}
+		int write = from;
+		for (int i = from; i < to; i++) {
+			if (write > from && columns[write - 1] == columns[i]) {
+				values[write - 1] += values[i];
+			} else {
+				columns[write] = columns[i];
+				values[write] = values[i];
+				write++;
+			}
+		}
+		return write - from;
+	}
+
+	public int rows() {
+		return rows;
+	}
+
+	public int columns() {
+		return columns;
+	}
+
+	/**
+	 * Returns the number of stored entries
+	 */
+	public int nonZeros() {
+		return rowStarts[rows];
+	}
+
+	/**
+	 * Returns an entry, zero if it is not stored
+	 */
+	public double get(int row, int column) {
+		int at = Arrays.binarySearch(columnIndices, rowStarts[row], rowStarts[row + 1], column);
+		return at >= 0 ? values[at] : 0;
+	}
+
+	/**
+	 * out = this * x
+	 */
+	public void multiply(double[] x, double[] out) {
+		for (int i = 0; i < rows; i++) {
+			double sum = 0;
+			for (int k = rowStarts[i]; k < rowStarts[i + 1]; k++) {
+				sum += values[k] * x[columnIndices[k]];
+			}
+			out[i] = sum;
+		}
+	}
+
+	/**
+	 * out = this^T * x, scattering each row into out
+	 */
+	public void transposeMultiply(double[] x, double[] out) {
+		Arrays.fill(out, 0, columns, 0);
+		for (int i = 0; i < rows; i++) {
+			double xi = x[i];
+			if (xi == 0) {
+				continue;
+			}
+			for (int k = rowStarts[i]; k < rowStarts[i + 1]; k++) {
+				out[columnIndices[k]] += values[k] * xi;
+			}
+		}
+	}
+
+	/**
+	 * Returns this * other as a dense matrix
+	 */
+	public Matrix multiply(Matrix other) {
+		if (other.rows() != columns) {
+			throw new IllegalArgumentException("Cannot multiply " + rows + "x" + columns + " by " + other.rows() + "x"
+					+ other.columns());
+		}
+		Matrix response = new Matrix(rows, other.columns());
+		double[] x = new double[columns];
+		double[] out = new double[rows];
+		for (int c = 0; c < other.columns(); c++) {
+			for (int j = 0; j < columns; j++) {
+				x[j] = other.get(j, c);
+			}
+			multiply(x, out);
+			for (int i = 0; i < rows; i++) {
+				response.set(out[i], i, c);
+			}
+		}
+		return response;
+	}
+
+	/**
+	 * Returns this^T * other as a dense matrix, without forming the transpose
+	 */
+	public Matrix transposeMultiply(Matrix other) {
+		if (other.rows() != rows) {
+			throw new IllegalArgumentException("Cannot multiply the transpose of " + rows + "x" + columns + " by "
+					+ other.rows() + "x" + other.columns());
+		}
+		Matrix response = new Matrix(columns, other.columns());
+		double[] x = new double[rows];
+		double[] out = new double[columns];
+		for (int c = 0; c < other.columns(); c++) {
+			for (int i = 0; i < rows; i++) {
+				x[i] = other.get(i, c);
+			}
+			transposeMultiply(x, out);
+			for (int j = 0; j < columns; j++) {
+				response.set(out[j], j, c);
+			}
+		}
+		return response;
+	}
+
+	/**
+	 * Returns the transpose, itself in CSR form (the CSC form of this matrix)
+	 */
+	public SparseMatrix transpose() {
+		int nonZeros = nonZeros();
+		int[] starts = new int[columns + 1];
+		for (int k = 0; k < nonZeros; k++) {
+			starts[columnIndices[k] + 1]++;
+		}
+		for (int j = 0; j < columns; j++) {
+			starts[j + 1] += starts[j];
+		}
+		int[] next = Arrays.copyOf(starts, columns);
+		int[] indices = new int[nonZeros];
+		double[] entries = new double[nonZeros];
+		// walking rows in order leaves each transposed row sorted
+		for (int i = 0; i < rows; i++) {
+			for (int k = rowStarts[i]; k < rowStarts[i + 1]; k++) {
+				int at = next[columnIndices[k]]++;
+				indices[at] = i;
+				entries[at] = values[k];
+			}
+		}
+		return new SparseMatrix(columns, rows, starts, indices, entries);
+	}
+
+	/**
+	 * Writes the squared norm of every column, the diagonal of this^T this
+	 */
+	public void columnSquaredNorms(double[] out) {
+		Arrays.fill(out, 0, columns, 0);
+		for (int k = 0, n = nonZeros(); k < n; k++) {
+			out[columnIndices[k]] += values[k] * values[k];
+		}
+	}
+
+	/**
+	 * Returns a dense copy; only for small matrices
+	 */
+	public Matrix toMatrix() {
+		Matrix response = new Matrix(rows, columns);
+		for (int i = 0; i < rows; i++) {
+			for (int k = rowStarts[i]; k < rowStarts[i + 1]; k++) {
+				response.set(values[k], i, columnIndices[k]);
+			}
+		}
+		return response;
+	}
+}
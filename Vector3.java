@@ -92,6 +92,25 @@ public class Vector3 implements Serializable {
 		this.z = z;
 	}
 	
+	/**
+	 * Sets all three coordinates
+	 * @return this vector
+	 */
+	public Vector3 set(double x, double y, double z) {
+		this.x = x;
+		this.y = y;
+		this.z = z;
+		return this;
+	}
+	
+	/**
+	 * Copies another vector into this one
+	 * @return this vector
+	 */
+	public Vector3 set(Vector3 rhs) {
+		return set(rhs.x, rhs.y, rhs.z);
+	}
+	
 	/**
 	 * Adds a vector to this one and returns the result
 	 * @param v2 - the other vector
@@ -119,6 +138,59 @@ public class Vector3 implements Serializable {
 		return scale(this, scaler);
 	}
 	
+	/**
+	 * Adds a vector to this one without allocating. dst may be this or v2.
+	 * @param v2 - the other vector
+	 * @param dst - receives the sum
+	 * @return dst
+	 */
+	public Vector3 addInto(Vector3 v2, Vector3 dst) {
+		return dst.set(x + v2.x, y + v2.y, z + v2.z);
+	}
+	
+	/**
+	 * Subtracts a vector from this one without allocating. dst may be this or v2.
+	 * @param v2 - the vector to be subtracted
+	 * @param dst - receives this - v2
+	 * @return dst
+	 */
+	public Vector3 subtractInto(Vector3 v2, Vector3 dst) {
+		return dst.set(x - v2.x, y - v2.y, z - v2.z);
+	}
+	
+	/**
+	 * Scales this vector without allocating. dst may be this.
+	 * @param scaler - the constant to scale the vector by
+	 * @param dst - receives the scaled vector
+	 * @return dst
+	 */
+	public Vector3 scaleInto(double scaler, Vector3 dst) {
+		return dst.set(x * scaler, y * scaler, z * scaler);
+	}
+	
+	/**
+	 * Cross product without allocating. dst may be this or v2.
+	 * @param v2 - the second vector
+	 * @param dst - receives this x v2
+	 * @return dst
+	 */
+	public Vector3 crossInto(Vector3 v2, Vector3 dst) {
+		return dst.set(y * v2.z - z * v2.y, z * v2.x - x * v2.z, x * v2.y - y * v2.x);
+	}
+	
+	/**
+	 * Unit vector without allocating. dst may be this.
+	 * @param dst - receives the unit vector, or the null vector if this has no length
+	 * @return dst
+	 */
+	public Vector3 unitVectorInto(Vector3 dst) {
+		double magnitude = magnitude();
+		if (magnitude == 0) {
+			return dst.set(0, 0, 0);
+		}
+		return scaleInto(1 / magnitude, dst);
+	}
+	
 	/**
 	 * @return the magnitude of the vector
 	 */
@@ -262,15 +334,26 @@ public class Vector3 implements Serializable {
 	 * @return A vector that has been reflected about the given axis
 	 */
 	public Vector3 reflectParticle(Vector3 origin, Vector3 axis) {
-		Vector3 unitN = Vector3.unitVector(axis);
-		
+		return reflectParticleInto(origin, axis, new Vector3());
+	}
+	
+	/**
+	 * Same as reflectParticle, writing the result into dst instead of allocating.
+	 * dst may be this, origin or axis.
+	 * @return dst
+	 */
+	public Vector3 reflectParticleInto(Vector3 origin, Vector3 axis, Vector3 dst) {
 		// From MathWorld:
 		// reflection = -this + 2 * origin + 2 * unitN * ((this - origin) dot unitN)
+		double magnitude = axis.magnitude();
+		double nx = 0, ny = 0, nz = 0;
+		if (magnitude != 0) {
+			nx = axis.x / magnitude;
+			ny = axis.y / magnitude;
+			nz = axis.z / magnitude;
+		}
+		double along = 2 * ((x - origin.x) * nx + (y - origin.y) * ny + (z - origin.z) * nz);
 		
-		Vector3 response = new Vector3(this).scale(-1);
-		response = response.add(origin.scale(2));
-		response = response.add(unitN.scale(2 * Vector3.dot(Vector3.subtract(this, origin), unitN)));
-		
-		return response;
+		return dst.set(-x + 2 * origin.x + along * nx, -y + 2 * origin.y + along * ny, -z + 2 * origin.z + along * nz);
 	}
 }
@@ -0,0 +1,162 @@
+/**
+ * Vector3 operations over whole arrays of vectors at once. Vectors are packed
+ * into a double[] as x0, y0, z0, x1, y1, z1, ..., so vector i starts at index
+ * 3 * i. Every method works on count vectors and writes into a caller-owned
+ * output array, allocating nothing.
+ *
+ * The loops are kept branch-free and free of calls so the JIT can unroll and
+ * vectorize them. Output arrays may be the same as an input array.
+ */
+public final class Vector3Batch {
+
+	private Vector3Batch() {
+	}
+
+	/**
+	 * Packs a Vector3 into an array at vector index i
+	 */
+	public static void put(double[] vectors, int i, Vector3 v) {
+		int at = 3 * i;
+		vectors[at] = v.getX();
+		vectors[at + 1] = v.getY();
+		vectors[at + 2] = v.getZ();
+	}
+
+	/**
+	 * Reads vector index i into dst
+	 * @return dst
+	 */
+	public static Vector3 get(double[] vectors, int i, Vector3 dst) {
+		int at = 3 * i;
+		return dst.set(vectors[at], vectors[at + 1], vectors[at + 2]);
+	}
+
+	/**
+	 * out[i] = a[i] + b[i]
+	 */
+	public static void add(double[] a, double[] b, double[] out, int count) {
+		for (int i = 0, n = 3 * count; i < n; i++) {
+			out[i] = a[i] + b[i];
+		}
+	}
+
+	/**
+	 * out[i] = a[i] - b[i]
+	 */
+	public static void subtract(double[] a, double[] b, double[] out, int count) {
+		for (int i = 0, n = 3 * count; i < n; i++) {
+			out[i] = a[i] - b[i];
+		}
+	}
+
+	/**
+	 * out[i] = a[i] * scaler
+	 */
+	public static void scale(double[] a, double scaler, double[] out, int count) {
+		for (int i = 0, n = 3 * count; i < n; i++) {
+			out[i] = a[i] * scaler;
+		}
+	}
+
+	/**
+	 * dots[i] = a[i] . b[i], one value per vector
+	 */
+	public static void dot(double[] a, double[] b, double[] dots, int count) {
+		for (int i = 0; i < count; i++) {
+			int at = 3 * i;
+			dots[i] = a[at] * b[at] + a[at + 1] * b[at + 1] + a[at + 2] * b[at + 2];
+		}
+	}
+
+	/**
+	 * magnitudes[i] = |a[i]|, one value per vector
+	 */
+	public static void magnitude(double[] a, double[] magnitudes, int count) {
+		for (int i = 0; i < count; i++) {
+			int at = 3 * i;
+			double x = a[at];
+			double y = a[at + 1];
+			double z = a[at + 2];
+			magnitudes[i] = Math.sqrt(x * x + y * y + z * z);
+		}
+	}
+
+	/**
+	 * out[i] = a[i] x b[i]
+	 */
+	public static void cross(double[] a, double[] b, double[] out, int count) {
+		for (int i = 0; i < count; i++) {
+			int at = 3 * i;
+			double ax = a[at], ay = a[at + 1], az = a[at + 2];
+			double bx = b[at], by = b[at + 1], bz = b[at + 2];
+			out[at] = ay * bz - az * by;
+			out[at + 1] = az * bx - ax * bz;
+			out[at + 2] = ax * by - ay * bx;
+		}
+	}
+
+	/**
+	 * out[i] = a[i] / |a[i]|, or the null vector where a[i] has no length
+	 */
+	public static void normalize(double[] a, double[] out, int count) {
+		for (int i = 0; i < count; i++) {
+			int at = 3 * i;
+			double x = a[at];
+			double y = a[at + 1];
+			double z = a[at + 2];
+			double squared = x * x + y * y + z * z;
+			double inverse = squared == 0 ? 0 : 1 / Math.sqrt(squared);
+			out[at] = x * inverse;
+			out[at + 1] = y * inverse;
+			out[at + 2] = z * inverse;
+		}
+	}
+
+	/**
+	 * Reflects every particle about one axis through one origin, as
+	 * Vector3.reflectParticle does for a single particle
+	 */
+	public static void reflect(double[] particles, Vector3 origin, Vector3 axis, double[] out, int count) {
+		double magnitude = axis.magnitude();
+		double nx = 0, ny = 0, nz = 0;
+		if (magnitude != 0) {
+			nx = axis.getX() / magnitude;
+			ny = axis.getY() / magnitude;
+			nz = axis.getZ() / magnitude;
+		}
+		double ox = origin.getX(), oy = origin.getY(), oz = origin.getZ();
+
+		for (int i = 0; i < count; i++) {
+			int at = 3 * i;
+			double px = particles[at];
+			double py = particles[at + 1];
+			double pz = particles[at + 2];
+			double along = 2 * ((px - ox) * nx + (py - oy) * ny + (pz - oz) * nz);
+			out[at] = 2 * ox - px + along * nx;
+			out[at + 1] = 2 * oy - py + along * ny;
+			out[at + 2] = 2 * oz - pz + along * nz;
+		}
+	}
+
+	/**
+	 * Reflects particle i about axes[i] through origins[i]
+	 */
+	public static void reflect(double[] particles, double[] origins, double[] axes, double[] out, int count) {
+		for (int i = 0; i < count; i++) {
+			int at = 3 * i;
+			double ax = axes[at], ay = axes[at + 1], az = axes[at + 2];
+			double squared = ax * ax + ay * ay + az * az;
+			double inverse = squared == 0 ? 0 : 1 / Math.sqrt(squared);
+			double nx = ax * inverse, ny = ay * inverse, nz = az * inverse;
+
+			double ox = origins[at], oy = origins[at + 1], oz = origins[at + 2];
+			double px = particles[at];
+			double py = particles[at + 1];
+			double pz = particles[at + 2];
+			double along = 2 * ((px - ox) * nx + (py - oy) * ny + (pz - oz) * nz);
+			out[at] = 2 * ox - px + along * nx;
+			out[at + 1] = 2 * oy - py + along * ny;
+			out[at + 2] = 2 * oz - pz + along * nz;
+		}
+	}
+}
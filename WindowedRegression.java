@@ -0,0 +1,131 @@
+/**
+ * Fits y = m*x + b over the most recent points of a series. Points are kept
+ * in a fixed-capacity ring buffer; when the window is full the oldest point
+ * is taken back out of the running statistics as each new one goes in, so an
+ * update is O(1) and allocates nothing.
+ * 
+ * Removing points undoes Welford updates, which lets rounding error creep in
+ * over very long series, so the statistics are rebuilt from the buffer once
+ * every capacity updates. That keeps the amortized cost O(1).
+ */
+public class WindowedRegression {
+
+	private final double[] xs;
+	private final double[] ys;
+	private final RegressionAccumulator statistics = new RegressionAccumulator();
+	// index of the oldest point
+	private int head;
+	private int size;
+	private int sinceRebuild;
+
+	/**
+	 * Constructor - fit over the last capacity points
+	 */
+	public WindowedRegression(int capacity) {
+		if (capacity < 1) {
+			throw new IllegalArgumentException("Window must hold at least one point");
+		}
+		xs = new double[capacity];
+		ys = new double[capacity];
+	}
+
+	/**
+	 * Adds a point, dropping the oldest one if the window is full
+	 */
+	public void add(double x, double y) {
+		int capacity = xs.length;
+		if (size == capacity) {
+			statistics.remove(xs[head], ys[head]);
+			xs[head] = x;
+			ys[head] = y;
+			head = (head + 1) % capacity;
+		} else {
+			int tail = (head + size) % capacity;
+			xs[tail] = x;
+			ys[tail] = y;
+			size++;
+		}
+		statistics.add(x, y);
+
+		if (++sinceRebuild >= capacity) {
+			rebuild();
+		}
+	}
+
+	/**
+	 * Empties the window
+	 */
+	public void clear() {
+		statistics.clear();
+		head = 0;
+		size = 0;
+		sinceRebuild = 0;
+	}
+
+	private void rebuild() {
+		statistics.clear();
+		for (int i = 0; i < size; i++) {
+			int at = (head + i) % xs.length;
+			statistics.add(xs[at], ys[at]);
+		}
+		sinceRebuild = 0;
+	}
+
+	/**
+	 * Returns the number of points in the window
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the largest number of points the window holds
+	 */
+	public int capacity() {
+		return xs.length;
+	}
+
+	/**
+	 * @return slope over the window
+	 */
+	public double slope() {
+		return statistics.slope();
+	}
+
+	/**
+	 * @return y intercept over the window
+	 */
+	public double intercept() {
+		return statistics.intercept();
+	}
+
+	/**
+	 * Returns the sum of squared residuals over the window
+	 */
+	public double chiSquared() {
+		return statistics.sumSquaredResiduals();
+	}
+
+	/**
+	 * Returns the statistics of the points in the window
+	 */
+	public RegressionAccumulator statistics() {
+		return statistics;
+	}
+
+	/**
+	 * Fits every window of a series in one pass. Entry i of each output array
+	 * describes the fit over the window ending at point i (shorter for the
+	 * first window - 1 points).
+	 */
+	public static void rolling(double[] xs, double[] ys, int count, int window, double[] slopes, double[] intercepts,
+			double[] chiSquared) {
+		WindowedRegression regression = new WindowedRegression(window);
+		for (int i = 0; i < count; i++) {
+			regression.add(xs[i], ys[i]);
+			slopes[i] = regression.slope();
+			intercepts[i] = regression.intercept();
+			chiSquared[i] = regression.chiSquared();
+		}
+	}
+}
@@ -0,0 +1,25 @@
+package regression.jmh;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.function.DoubleSupplier;
+
+/**
+ * Looks up a case from RegressionBenchmark. JMH needs benchmarks in a named
+ * package, and a named package cannot refer to classes in the default
+ * package, so the lookup goes through reflection once per trial; the
+ * measured call is a plain DoubleSupplier the JIT can inline.
+ */
+final class Cases {
+
+	private Cases() {
+	}
+
+	static DoubleSupplier prepare(String name, int size) throws Exception {
+		try {
+			return (DoubleSupplier) Class.forName("RegressionBenchmark").getMethod("prepare", String.class, int.class)
+					.invoke(null, name, size);
+		} catch (InvocationTargetException e) {
+			throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+		}
+	}
+}
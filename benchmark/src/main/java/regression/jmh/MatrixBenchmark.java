@@ -0,0 +1,48 @@
+package regression.jmh;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.DoubleSupplier;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Matrix products and the LinearSolver stages on a random, diagonally
+ * dominant side x side system
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(2)
+public class MatrixBenchmark {
+
+	@Param({ "matrix.multiply", "matrix.transpose", "solve.LinearSolver", "solve.eliminate",
+			"solve.backSubstitute" })
+	public String stage;
+
+	@Param({ "2", "50", "500" })
+	public int side;
+
+	private DoubleSupplier operation;
+
+	@Setup
+	public void setUp() throws Exception {
+		operation = Cases.prepare(stage, side);
+	}
+
+	@Benchmark
+	public double run() {
+		return operation.getAsDouble();
+	}
+}
@@ -0,0 +1,53 @@
+package regression.jmh;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.DoubleSupplier;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The stages that run over a data set: parsing, assembling the normal
+ * equations, the chi squared pass, fitting a line and an ill-conditioned
+ * polynomial, and rendering the plot. The data file is
+ * written once per trial. FileParser and the in-memory stages are only
+ * defined up to 10^7 points, the polynomial fits up to 10^6.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(value = 2, jvmArgsAppend = "-Djava.awt.headless=true")
+public class PointsBenchmark {
+
+	@Param({ "parse.FileParser", "parse.MappedDataReader", "assemble.transposeMultiply", "assemble.gram",
+			"assemble.accumulator", "chiSquared.visualizer", "chiSquared.dataSet", "chiSquared.residuals",
+			"fit.line.LeastSquares", "fit.polynomial.normalEquations", "fit.polynomial.QR",
+			"fit.polynomial.LeastSquares", "render.plot" })
+	public String stage;
+
+	@Param({ "100", "10000", "1000000" })
+	public int points;
+
+	private DoubleSupplier operation;
+
+	@Setup
+	public void setUp() throws Exception {
+		operation = Cases.prepare(stage, points);
+	}
+
+	@Benchmark
+	public double run() {
+		return operation.getAsDouble();
+	}
+}
@@ -0,0 +1,91 @@
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Small assertion helpers shared by the behavior checks. Each check is a
+ * plain program that throws an AssertionError on the first failure:
+ *
+ * <pre>
+ * javac -d out *.java test/*.java
+ * java -cp out ParallelRegressionTest
+ * </pre>
+ */
+public class Checks {
+
+	private Checks() {
+	}
+
+	/**
+	 * Fails unless actual is within tolerance of expected, relative to the
+	 * larger of 1 and |expected|
+	 */
+	public static void assertClose(String what, double expected, double actual, double tolerance) {
+		double error = Math.abs(expected - actual) / Math.max(1, Math.abs(expected));
+		if (!(error <= tolerance)) {
+			throw new AssertionError(what + ": expected " + expected + ", was " + actual + " (relative error "
+					+ error + ", tolerance " + tolerance + ")");
+		}
+	}
+
+	/**
+	 * Fails unless every entry of actual is close to expected
+	 */
+	public static void assertClose(String what, double[] expected, double[] actual, double tolerance) {
+		if (expected.length != actual.length) {
+			throw new AssertionError(what + ": expected " + expected.length + " values, was " + actual.length);
+		}
+		for (int i = 0; i < expected.length; i++) {
+			assertClose(what + "[" + i + "]", expected[i], actual[i], tolerance);
+		}
+	}
+
+	public static void assertTrue(String what, boolean condition) {
+		if (!condition) {
+			throw new AssertionError(what);
+		}
+	}
+
+	/**
+	 * Writes tab-separated x, y rows to a temporary file that is deleted on
+	 * exit
+	 */
+	public static Path writeData(double[] xs, double[] ys) throws IOException {
+		Path path = Files.createTempFile("regression", ".txt");
+		path.toFile().deleteOnExit();
+		try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(path))) {
+			for (int i = 0; i < xs.length; i++) {
+				out.println(xs[i] + "\t" + ys[i]);
+			}
+		}
+		return path;
+	}
+
+	/**
+	 * Solves the normal equations of y = sum b_j f_j(x) directly, by building
+	 * the dense design matrix and calling LinearSolver
+	 */
+	public static double[] directFit(DesignMatrixBuilder design, double[] xs, double[] ys, double[] weights) {
+		int k = design.features();
+		double[][] gram = new double[k][k];
+		double[][] moment = new double[k][1];
+		double[] row = new double[k];
+		for (int n = 0; n < xs.length; n++) {
+			design.expand(xs, n, row);
+			double w = weights == null ? 1 : weights[n];
+			for (int i = 0; i < k; i++) {
+				for (int j = 0; j < k; j++) {
+					gram[i][j] += w * row[i] * row[j];
+				}
+				moment[i][0] += w * row[i] * ys[n];
+			}
+		}
+		Matrix solution = new LinearSolver(new Matrix(gram), new Matrix(moment)).getSolution();
+		double[] response = new double[k];
+		for (int i = 0; i < k; i++) {
+			response[i] = solution.get(i, 0);
+		}
+		return response;
+	}
+}
@@ -0,0 +1,100 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * Checks that FitCache never serves a fit for data that changed under an
+ * unchanged size and modification time, that cached factors cannot be
+ * altered through a hit, and that a columnar file rejects designs it cannot
+ * supply
+ */
+public class FitCacheTest {
+
+	public static void main(String[] args) throws Exception {
+		sameSizeRewrite();
+		restoredModificationTime();
+		factorizationIsCopied();
+		columnarInputs();
+		System.out.println("FitCacheTest passed");
+	}
+
+	/**
+	 * A rewrite with the same size, straight after hashing and with the old
+	 * modification time put back, falls inside the clock granularity
+	 */
+	private static void sameSizeRewrite() throws IOException {
+		Path data = Checks.writeData(new double[] { 1, 2, 3 }, new double[] { 2, 4, 6 });
+		long modified = data.toFile().lastModified();
+		FitCache cache = new FitCache(FitCache.DEFAULT_BYTES);
+		DesignMatrixBuilder design = new DesignMatrixBuilder(1);
+		double slope = cache.fit(data.toString(), design).coefficient(0);
+		Checks.assertClose("first slope", 2, slope, 1E-12);
+
+		Files.write(data, "1.0\t3.0\n2.0\t6.0\n3.0\t9.0\n".getBytes());
+		data.toFile().setLastModified(modified);
+		Checks.assertClose("slope after a racy rewrite", 3, cache.fit(data.toString(), design).coefficient(0), 1E-12);
+	}
+
+	/**
+	 * Once the memo is old enough to trust, a same-size change that restores
+	 * the modification time still shows in the status change time
+	 */
+	private static void restoredModificationTime() throws Exception {
+		Path directory = Files.createTempDirectory("fitcache");
+		directory.toFile().deleteOnExit();
+		Path data = Checks.writeData(new double[] { 1, 2, 3 }, new double[] { 2, 4, 6 });
+		long modified = System.currentTimeMillis() - 60000;
+		data.toFile().setLastModified(modified);
+		Thread.sleep(2500);
+
+		DesignMatrixBuilder design = new DesignMatrixBuilder(1);
+		FitCache first = new FitCache(FitCache.DEFAULT_BYTES, directory.toString());
+		long hash = first.contentHash(data.toString());
+		Checks.assertTrue("settled memo is reused", first.contentHash(data.toString()) == hash);
+
+		Files.write(data, "1.0\t3.0\n2.0\t6.0\n3.0\t9.0\n".getBytes());
+		data.toFile().setLastModified(modified);
+		// a new process would read the memo from disk
+		FitCache second = new FitCache(FitCache.DEFAULT_BYTES, directory.toString());
+		Checks.assertTrue("restored time is rehashed", second.contentHash(data.toString()) != hash);
+		Checks.assertClose("slope after a restore", 3, second.fit(data.toString(), design).coefficient(0), 1E-12);
+		for (File file : directory.toFile().listFiles()) {
+			file.delete();
+		}
+	}
+
+	/**
+	 * Refactoring the factor handed out by one hit leaves the next hit alone
+	 */
+	private static void factorizationIsCopied() throws IOException {
+		Path data = Checks.writeData(new double[] { 0, 1, 2, 3 }, new double[] { 1, 3, 5, 7 });
+		FitCache cache = new FitCache(FitCache.DEFAULT_BYTES);
+		DesignMatrixBuilder design = new DesignMatrixBuilder(1);
+		double[] right = { 1, 1 };
+		double[] before = right.clone();
+		cache.fit(data.toString(), design).factorization().solveInPlace(before);
+
+		CholeskySolver handed = cache.fit(data.toString(), design).factorization();
+		handed.factor(Matrix.identity(2).scale(7));
+		double[] after = right.clone();
+		cache.fit(data.toString(), design).factorization().solveInPlace(after);
+		Checks.assertTrue("cached factor unchanged, was " + Arrays.toString(after), Arrays.equals(before, after));
+	}
+
+	/**
+	 * A columnar file holds x, y only, so a two-input design is reported and
+	 * gets no fit
+	 */
+	private static void columnarInputs() throws IOException {
+		Path text = Checks.writeData(new double[] { 0, 1, 2, 3 }, new double[] { 1, 3, 5, 7 });
+		Path columnar = Files.createTempFile("regression", ".col");
+		columnar.toFile().deleteOnExit();
+		ColumnarFile.convert(text.toString(), columnar.toString(), ColumnarFile.DEFAULT_CHUNK_ROWS);
+		FitCache cache = new FitCache(FitCache.DEFAULT_BYTES);
+		Checks.assertTrue("line fits a columnar file",
+				cache.fit(columnar.toString(), new DesignMatrixBuilder(1)) != null);
+		Checks.assertTrue("two inputs get no fit", cache.fit(columnar.toString(), new DesignMatrixBuilder(2)) == null);
+	}
+}
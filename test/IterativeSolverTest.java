@@ -0,0 +1,60 @@
+import java.util.Random;
+
+/**
+ * Checks that LSQR and CGLS, with and without column scaling, reach the
+ * least-squares solution a dense QR decomposition finds
+ */
+public class IterativeSolverTest {
+
+	public static void main(String[] args) {
+		SparseMatrix a = system(new Random(2323));
+		Random random = new Random(232323);
+		Matrix b = new Matrix(a.rows(), 2);
+		for (int i = 0; i < a.rows(); i++) {
+			b.set(random.nextGaussian(), i, 0);
+			b.set(random.nextGaussian() * 100, i, 1);
+		}
+		Matrix expected = new QRDecomposition(a.toMatrix()).solve(b);
+
+		for (IterativeSolver.Method method : IterativeSolver.Method.values()) {
+			for (boolean preconditioned : new boolean[] { true, false }) {
+				String what = method + (preconditioned ? " scaled" : " unscaled");
+				IterativeSolver solver = new IterativeSolver().method(method).preconditioned(preconditioned)
+						.tolerance(1E-14).maxIterations(500);
+				Matrix actual = solver.solve(a, b);
+				Checks.assertTrue(what + " converges", solver.isConverged());
+				for (int c = 0; c < b.columns(); c++) {
+					// entries span three decades, so measure errors against the largest
+					double scale = 0;
+					for (int j = 0; j < a.columns(); j++) {
+						scale = Math.max(scale, Math.abs(expected.get(j, c)));
+					}
+					for (int j = 0; j < a.columns(); j++) {
+						Checks.assertClose(what + " x(" + j + ", " + c + ")", expected.get(j, c) / scale,
+								actual.get(j, c) / scale, 1E-8);
+					}
+				}
+			}
+		}
+		System.out.println("IterativeSolverTest passed");
+	}
+
+	/**
+	 * A 60 x 8 system with about a third of the entries set, a diagonal
+	 * block so it has full column rank, and columns scaled from 1 to 1000
+	 */
+	private static SparseMatrix system(Random random) {
+		int m = 60;
+		int n = 8;
+		SparseMatrix.Builder builder = new SparseMatrix.Builder(n);
+		for (int i = 0; i < m; i++) {
+			for (int j = 0; j < n; j++) {
+				if (i == j || random.nextInt(3) == 0) {
+					builder.add(j, (1 + random.nextDouble()) * Math.pow(10, j % 4));
+				}
+			}
+			builder.endRow();
+		}
+		return builder.build();
+	}
+}
@@ -0,0 +1,93 @@
+import java.util.Random;
+
+/**
+ * Checks that LeastSquares keeps the normal equations for well-conditioned
+ * fits and switches to QR, recovering the true coefficients, when the
+ * normal equations cannot
+ */
+public class LeastSquaresTest {
+
+	public static void main(String[] args) {
+		wellConditioned();
+		illConditioned();
+		System.out.println("LeastSquaresTest passed");
+	}
+
+	/**
+	 * A noisy line: the normal equations are chosen and agree with QR and the
+	 * streaming accumulator
+	 */
+	private static void wellConditioned() {
+		int n = 5000;
+		Random random = new Random(14);
+		Matrix a = new Matrix(n, 2);
+		Matrix b = new Matrix(n, 1);
+		RegressionAccumulator accumulator = new RegressionAccumulator();
+		for (int i = 0; i < n; i++) {
+			double x = random.nextDouble() * 20 - 10;
+			double y = 0.5 * x - 2 + random.nextGaussian();
+			a.set(x, i, 0);
+			a.set(1, i, 1);
+			b.set(y, i, 0);
+			accumulator.add(x, y);
+		}
+
+		LeastSquares fit = new LeastSquares(a, b);
+		Checks.assertTrue("line uses the normal equations", !fit.usedQR());
+		Checks.assertTrue("condition estimate is below the limit", fit.conditionEstimate() < LeastSquares.CONDITION_LIMIT);
+		Matrix qr = new QRDecomposition(a).solve(b);
+		Checks.assertClose("slope against QR", qr.get(0, 0), fit.getSolution().get(0, 0), 1E-10);
+		Checks.assertClose("intercept against QR", qr.get(1, 0), fit.getSolution().get(1, 0), 1E-10);
+		Checks.assertClose("slope against accumulator", accumulator.slope(), fit.getSolution().get(0, 0), 1E-10);
+		Checks.assertClose("intercept against accumulator", accumulator.intercept(), fit.getSolution().get(1, 0), 1E-10);
+	}
+
+	/**
+	 * An exact degree-12 polynomial on [0, 1]: cond(A^T A) is far past what
+	 * the normal equations survive, but QR recovers the coefficients
+	 */
+	private static void illConditioned() {
+		int degree = 12;
+		int n = 2000;
+		DesignMatrixBuilder design = new DesignMatrixBuilder(1).degree(degree);
+		double[] truth = new double[design.features()];
+		Random random = new Random(12);
+		for (int j = 0; j < truth.length; j++) {
+			truth[j] = random.nextInt(11) - 5;
+		}
+
+		Matrix inputs = new Matrix(n, 1);
+		for (int i = 0; i < n; i++) {
+			inputs.set((double) i / (n - 1), i, 0);
+		}
+		Matrix a = design.build(inputs);
+		Matrix b = new Matrix(n, 1);
+		for (int i = 0; i < n; i++) {
+			double y = 0;
+			for (int j = 0; j < truth.length; j++) {
+				y += a.get(i, j) * truth[j];
+			}
+			b.set(y, i, 0);
+		}
+
+		LeastSquares fit = new LeastSquares(a, b);
+		Checks.assertTrue("polynomial uses QR", fit.usedQR());
+		Checks.assertTrue("condition estimate is above the limit", fit.conditionEstimate() >= LeastSquares.CONDITION_LIMIT);
+		double qrError = maxError(fit.getSolution(), truth);
+
+		Matrix normal = new CholeskySolver(a.gram()).solve(a.transposeMultiply(b));
+		double normalError = normal == null ? Double.POSITIVE_INFINITY : maxError(normal, truth);
+
+		Checks.assertTrue("QR recovers the coefficients, error " + qrError, qrError < 1E-4);
+		Checks.assertTrue("QR beats the normal equations, " + qrError + " against " + normalError,
+				normalError > 100 * qrError);
+	}
+
+	private static double maxError(Matrix solution, double[] truth) {
+		double error = 0;
+		for (int j = 0; j < truth.length; j++) {
+			error = Math.max(error, Math.abs(solution.get(j, 0) - truth[j]));
+		}
+		return error;
+	}
+}
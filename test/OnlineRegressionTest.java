@@ -0,0 +1,97 @@
+import java.util.Random;
+
+/**
+ * Checks that OnlineRegression produces a fit on the first change that
+ * determines it, tracks a direct refit through adds and removes, and still
+ * recovers after a long run of degenerate points
+ */
+public class OnlineRegressionTest {
+
+	public static void main(String[] args) {
+		firstDeterminedTick();
+		tracksDirectFit();
+		degenerateStart();
+		System.out.println("OnlineRegressionTest passed");
+	}
+
+	/**
+	 * Two points at one x leave the line undetermined; a third at another x
+	 * pins it down, and the fit must be there at once
+	 */
+	private static void firstDeterminedTick() {
+		OnlineRegression line = new OnlineRegression();
+		line.add(1, 1);
+		Checks.assertTrue("one point is not ready", !line.isReady());
+		line.add(1, 2);
+		Checks.assertTrue("two points at one x are not ready", !line.isReady());
+		Checks.assertTrue("undetermined coefficient is NaN", Double.isNaN(line.coefficient(0)));
+		line.add(2, 3);
+		Checks.assertTrue("third point determines the line", line.isReady());
+
+		DesignMatrixBuilder design = new DesignMatrixBuilder(1);
+		double[] direct = Checks.directFit(design, new double[] { 1, 1, 2 }, new double[] { 1, 2, 3 }, null);
+		for (int i = 0; i < direct.length; i++) {
+			Checks.assertClose("line coefficient " + i, direct[i], line.coefficient(i), 1E-12);
+		}
+
+		// a quadratic needs a third distinct x
+		OnlineRegression quadratic = new OnlineRegression(new DesignMatrixBuilder(1).degree(2));
+		quadratic.add(0, 1);
+		quadratic.add(1, 2);
+		quadratic.add(1, 3);
+		Checks.assertTrue("two distinct x do not fix a quadratic", !quadratic.isReady());
+		quadratic.add(2, 5);
+		Checks.assertTrue("third distinct x determines the quadratic", quadratic.isReady());
+	}
+
+	/**
+	 * Random adds and removes of a polynomial feed agree with refitting the
+	 * points currently in the fit
+	 */
+	private static void tracksDirectFit() {
+		DesignMatrixBuilder design = new DesignMatrixBuilder(1).degree(2);
+		OnlineRegression online = new OnlineRegression(design);
+		Random random = new Random(8);
+		int n = 300;
+		double[] xs = new double[n];
+		double[] ys = new double[n];
+		for (int i = 0; i < n; i++) {
+			xs[i] = random.nextDouble() * 4 - 2;
+			ys[i] = 1 + xs[i] - 0.5 * xs[i] * xs[i] + 0.1 * random.nextGaussian();
+			online.add(xs[i], ys[i]);
+		}
+		// take back the first third, one at a time
+		double[] weights = new double[n];
+		for (int i = 0; i < n; i++) {
+			weights[i] = 1;
+		}
+		for (int i = 0; i < n / 3; i++) {
+			online.remove(xs[i], ys[i]);
+			weights[i] = 0;
+		}
+		Checks.assertTrue("fit survives removals", online.isReady());
+		double[] direct = Checks.directFit(design, xs, ys, weights);
+		for (int i = 0; i < direct.length; i++) {
+			Checks.assertClose("tracked coefficient " + i, direct[i], online.coefficient(i), 1E-9);
+		}
+	}
+
+	/**
+	 * A thousand points at one x back the retries off; points at new x values
+	 * still bring the fit back within as many changes as came before
+	 */
+	private static void degenerateStart() {
+		OnlineRegression line = new OnlineRegression();
+		for (int i = 0; i < 1000; i++) {
+			line.add(3, i % 7);
+		}
+		Checks.assertTrue("one x is never ready", !line.isReady());
+		int added = 0;
+		while (!line.isReady() && added < 10000) {
+			added++;
+			line.add(3 + added, 2 * added);
+		}
+		Checks.assertTrue("recovers after a degenerate start", line.isReady());
+		Checks.assertTrue("recovers within the backoff, took " + added, added <= 1000);
+	}
+}
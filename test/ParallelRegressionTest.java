@@ -0,0 +1,46 @@
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+
+/**
+ * Checks that the parallel fit of a file matches a single-threaded pass and
+ * the LinearSolver fit of the normal equations
+ */
+public class ParallelRegressionTest {
+
+	public static void main(String[] args) throws IOException {
+		// enough rows for several 1 MB ranges
+		int n = 400000;
+		Random random = new Random(4);
+		double[] xs = new double[n];
+		double[] ys = new double[n];
+		for (int i = 0; i < n; i++) {
+			xs[i] = 100 + random.nextDouble() * 50;
+			ys[i] = -3.5 * xs[i] + 12 + random.nextGaussian();
+		}
+		Path path = Checks.writeData(xs, ys);
+
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			long[] boundaries = ParallelRegression.splitLines(channel, 16);
+			Checks.assertTrue("file is split into several ranges", boundaries.length > 2);
+		}
+
+		RegressionAccumulator sequential = new RegressionAccumulator();
+		Checks.assertTrue("sequential read", MappedDataReader.read(path.toString(), sequential) == n);
+		RegressionAccumulator parallel = new ParallelRegression(4).fit(path.toString());
+
+		Checks.assertTrue("every point is counted once", parallel.count() == n);
+		Checks.assertClose("mean x", sequential.meanX(), parallel.meanX(), 1E-12);
+		Checks.assertClose("mean y", sequential.meanY(), parallel.meanY(), 1E-12);
+		Checks.assertClose("slope", sequential.slope(), parallel.slope(), 1E-10);
+		Checks.assertClose("intercept", sequential.intercept(), parallel.intercept(), 1E-10);
+
+		// the tolerance documented against the LinearSolver fit
+		Matrix solution = ParallelRegression.solve(parallel);
+		Checks.assertClose("solver slope", solution.get(0, 0), parallel.slope(), 1E-9);
+		Checks.assertClose("solver intercept", solution.get(1, 0), parallel.intercept(), 1E-9);
+		System.out.println("ParallelRegressionTest passed");
+	}
+}
@@ -0,0 +1,122 @@
+import java.util.Random;
+import java.util.SplittableRandom;
+
+/**
+ * Checks that cross-validation by subtracting fold sums matches refitting
+ * each training set from scratch, and that the bootstrap spread matches the
+ * textbook standard errors
+ */
+public class ResamplingTest {
+
+	public static void main(String[] args) {
+		// below and above the size where the fold pass goes parallel
+		crossValidation(new DesignMatrixBuilder(1), 1000, 5, 25);
+		crossValidation(new DesignMatrixBuilder(1).degree(2), 100000, 7, 2525);
+		bootstrap();
+		System.out.println("ResamplingTest passed");
+	}
+
+	/**
+	 * Deals the points to folds the way Resampling documents, refits every
+	 * training set directly, and scores each held-out fold point by point.
+	 * The data are a slice of a larger set, so offsets are exercised too.
+	 */
+	private static void crossValidation(DesignMatrixBuilder design, int n, int folds, long seed) {
+		Random random = new Random(seed);
+		DataSet all = new DataSet(n + 10);
+		for (int i = 0; i < n + 10; i++) {
+			double x = random.nextDouble() * 10 - 5;
+			double sigma = 0.5 + random.nextDouble();
+			all.add(x, 1 - 2 * x + 0.3 * x * x + sigma * random.nextGaussian(), 1 / (sigma * sigma));
+		}
+		DataSet data = all.slice(10, n + 10);
+		Resampling.CrossValidation cv = new Resampling(data, design).seed(seed).crossValidate(folds);
+
+		int[] order = new int[n];
+		for (int i = 0; i < n; i++) {
+			order[i] = i;
+		}
+		SplittableRandom shuffle = new SplittableRandom(seed);
+		for (int i = n - 1; i > 0; i--) {
+			int j = shuffle.nextInt(i + 1);
+			int temp = order[i];
+			order[i] = order[j];
+			order[j] = temp;
+		}
+		int[] foldOf = new int[n];
+		for (int i = 0; i < n; i++) {
+			foldOf[order[i]] = i % folds;
+		}
+
+		double[] xs = new double[n];
+		double[] ys = new double[n];
+		for (int i = 0; i < n; i++) {
+			xs[i] = data.x(i);
+			ys[i] = data.y(i);
+		}
+		double[] features = new double[design.features()];
+		double totalSquares = 0;
+		double totalWeight = 0;
+		for (int f = 0; f < folds; f++) {
+			// held-out points get zero weight, which drops them from the fit
+			double[] weights = new double[n];
+			for (int i = 0; i < n; i++) {
+				weights[i] = foldOf[i] == f ? 0 : data.weight(i);
+			}
+			double[] refit = Checks.directFit(design, xs, ys, weights);
+			Checks.assertClose("fold " + f + " coefficients", refit, cv.coefficients(f), 1E-9);
+
+			double squares = 0;
+			double weight = 0;
+			for (int i = 0; i < n; i++) {
+				if (foldOf[i] != f) {
+					continue;
+				}
+				design.expand(xs, i, features);
+				double fitted = 0;
+				for (int j = 0; j < features.length; j++) {
+					fitted += features[j] * refit[j];
+				}
+				double r = ys[i] - fitted;
+				squares += data.weight(i) * r * r;
+				weight += data.weight(i);
+			}
+			Checks.assertClose("fold " + f + " error", squares / weight, cv.foldError(f), 1E-8);
+			totalSquares += squares;
+			totalWeight += weight;
+		}
+		Checks.assertClose("mean squared error", totalSquares / totalWeight, cv.meanSquaredError(), 1E-8);
+	}
+
+	/**
+	 * A noisy line with unit weights: the estimate is the ordinary fit and
+	 * the bootstrap standard errors come close to sqrt(s^2 (X^T X)^-1)
+	 */
+	private static void bootstrap() {
+		int n = 400;
+		Random random = new Random(252525);
+		double[] xs = new double[n];
+		double[] ys = new double[n];
+		for (int i = 0; i < n; i++) {
+			xs[i] = random.nextDouble() * 10;
+			ys[i] = 4 + 0.7 * xs[i] + 2 * random.nextGaussian();
+		}
+		DataSet data = DataSet.of(xs, ys);
+		DesignMatrixBuilder design = new DesignMatrixBuilder(1);
+		Resampling.Bootstrap bootstrap = new Resampling(data, design).seed(25).bootstrap(4000);
+
+		double[] direct = Checks.directFit(design, xs, ys, null);
+		Checks.assertClose("bootstrap estimate", direct, bootstrap.estimate(), 1E-10);
+
+		RegressionAccumulator line = new RegressionAccumulator();
+		line.addAll(data);
+		double variance = line.sumSquaredResiduals() / (n - 2);
+		double sxx = line.sumXX() - n * line.meanX() * line.meanX();
+		double slopeError = Math.sqrt(variance / sxx);
+		double interceptError = Math.sqrt(variance * (1.0 / n + line.meanX() * line.meanX() / sxx));
+		int b = design.interceptIndex();
+		// errors are well below 1, so compare ratios rather than differences
+		Checks.assertClose("bootstrap slope error ratio", 1, bootstrap.standardError(1 - b) / slopeError, 0.1);
+		Checks.assertClose("bootstrap intercept error ratio", 1, bootstrap.standardError(b) / interceptError, 0.1);
+	}
+}
@@ -0,0 +1,97 @@
+import java.util.Random;
+
+/**
+ * Checks the one-factorization lambda path of RidgeRegression against a
+ * direct solve of the penalized normal equations (G + lambda P) b = X^T W y
+ * for each lambda, where P is the identity with the intercept left out
+ */
+public class RidgeRegressionTest {
+
+	private static final double[] LAMBDAS = { 0, 1E-3, 0.5, 20, 1E4 };
+
+	public static void main(String[] args) {
+		check(new DesignMatrixBuilder(1).degree(4), 24);
+		check(new DesignMatrixBuilder(1).degree(3).intercept(false), 2424);
+		check(new DesignMatrixBuilder(2).degree(2).interactions(true), 242424);
+		System.out.println("RidgeRegressionTest passed");
+	}
+
+	/**
+	 * Weighted, noisy data with inputs well away from zero, so centering
+	 * matters and the unpenalized intercept differs from a penalized one
+	 */
+	private static void check(DesignMatrixBuilder design, long seed) {
+		int n = 600;
+		int inputs = design.inputs();
+		int k = design.features();
+		Random random = new Random(seed);
+		double[][] rows = new double[n][k];
+		double[] ys = new double[n];
+		double[] weights = new double[n];
+		double[] values = new double[inputs];
+		NormalEquations normal = design.newNormalEquations();
+		for (int i = 0; i < n; i++) {
+			double y = 3;
+			for (int j = 0; j < inputs; j++) {
+				values[j] = 2 + random.nextDouble() * 2;
+				y += (j + 1) * values[j] - 0.5 * values[j] * values[j];
+			}
+			design.expand(values, 0, rows[i]);
+			ys[i] = y + 0.3 * random.nextGaussian();
+			weights[i] = 0.5 + random.nextDouble();
+			normal.add(rows[i], ys[i], weights[i]);
+		}
+
+		double[][] gram = new double[k][k];
+		double[] moment = new double[k];
+		for (int i = 0; i < n; i++) {
+			for (int a = 0; a < k; a++) {
+				for (int b = 0; b < k; b++) {
+					gram[a][b] += weights[i] * rows[i][a] * rows[i][b];
+				}
+				moment[a] += weights[i] * rows[i][a] * ys[i];
+			}
+		}
+
+		RidgeRegression ridge = new RidgeRegression(normal, design);
+		double[][] path = ridge.path(LAMBDAS);
+		String name = design.toString();
+		for (int l = 0; l < LAMBDAS.length; l++) {
+			double lambda = LAMBDAS[l];
+			// [X^T W y | G] solved against G + lambda P gives b and the hat matrix trace together
+			Matrix penalized = new Matrix(k, k);
+			Matrix rightSide = new Matrix(k, k + 1);
+			for (int a = 0; a < k; a++) {
+				for (int b = 0; b < k; b++) {
+					penalized.set(gram[a][b] + (a == b && a != design.interceptIndex() ? lambda : 0), a, b);
+					rightSide.set(gram[a][b], a, b + 1);
+				}
+				rightSide.set(moment[a], a, 0);
+			}
+			Matrix solution = new LinearSolver(penalized, rightSide).getSolution();
+			double[] direct = new double[k];
+			double df = 0;
+			for (int a = 0; a < k; a++) {
+				direct[a] = solution.get(a, 0);
+				df += solution.get(a, a + 1);
+			}
+
+			double rss = 0;
+			for (int i = 0; i < n; i++) {
+				double fitted = 0;
+				for (int a = 0; a < k; a++) {
+					fitted += rows[i][a] * direct[a];
+				}
+				rss += weights[i] * (ys[i] - fitted) * (ys[i] - fitted);
+			}
+
+			String what = name + " lambda " + lambda;
+			Checks.assertClose(what + " coefficients", direct, ridge.coefficients(lambda), 1E-7);
+			Checks.assertClose(what + " path", direct, path[l], 1E-7);
+			Checks.assertClose(what + " residual sum of squares", rss, ridge.residualSumSquares(lambda), 1E-7);
+			Checks.assertClose(what + " degrees of freedom", df, ridge.degreesOfFreedom(lambda), 1E-7);
+			double remaining = 1 - df / n;
+			Checks.assertClose(what + " gcv", rss / n / (remaining * remaining), ridge.gcv(lambda), 1E-7);
+		}
+	}
+}
@@ -0,0 +1,97 @@
+import java.util.Random;
+
+/**
+ * Checks that RobustRegression converges, ignores gross outliers, and
+ * measures each residual against its own sigma when the data carry weights
+ */
+public class RobustRegressionTest {
+
+	public static void main(String[] args) {
+		for (RobustRegression.Loss loss : RobustRegression.Loss.values()) {
+			outliers(loss);
+			sigmaWeights(loss);
+		}
+		System.out.println("RobustRegressionTest passed");
+	}
+
+	/**
+	 * A noisy line with one point in twenty thrown far above it: the fit
+	 * converges near the true line, and the converged coefficients solve the
+	 * weighted normal equations for the weights it reports
+	 */
+	private static void outliers(RobustRegression.Loss loss) {
+		int n = 2000;
+		Random random = new Random(22);
+		DataSet data = new DataSet(n);
+		for (int i = 0; i < n; i++) {
+			double x = random.nextDouble() * 20 - 10;
+			double y = 2 * x + 1 + random.nextGaussian();
+			if (i % 20 == 0) {
+				y += 50;
+			}
+			data.add(x, y);
+		}
+
+		DesignMatrixBuilder design = new DesignMatrixBuilder(1);
+		RobustRegression robust = new RobustRegression(design, loss).tolerance(1E-12).maxIterations(200);
+		double[] fit = robust.fit(data).clone();
+		Checks.assertTrue(loss + " converges", robust.isConverged());
+		Checks.assertClose(loss + " scale near the noise sigma", 1, robust.scale(), 0.15);
+
+		double[] ordinary = Checks.directFit(design, data.xs(), data.ys(), null);
+		int b = design.interceptIndex();
+		double[] line = new double[fit.length];
+		line[1 - b] = 2;
+		line[b] = 1;
+		// Huber still gives each outlier a little pull; Tukey gives it none
+		Checks.assertClose(loss + " true line", line, fit, loss == RobustRegression.Loss.HUBER ? 0.15 : 0.05);
+		Checks.assertTrue(loss + " beats ordinary least squares",
+				Math.abs(fit[b] - 1) < Math.abs(ordinary[b] - 1));
+
+		double[] weights = new double[n];
+		for (int i = 0; i < n; i++) {
+			weights[i] = robust.weight(i);
+		}
+		Checks.assertClose(loss + " fixed point of the reweighting", Checks.directFit(design, data.xs(), data.ys(),
+				weights), fit, 1E-8);
+	}
+
+	/**
+	 * Half the points have sigma 1 and half sigma 10, with weights 1/sigma^2
+	 * and no outliers. Standardized residuals are all unit normal, so the
+	 * noisy points keep nearly full robust weight and the fit stays close to
+	 * ordinary weighted least squares.
+	 */
+	private static void sigmaWeights(RobustRegression.Loss loss) {
+		int n = 4000;
+		Random random = new Random(2222);
+		DataSet data = new DataSet(n);
+		double[] weights = new double[n];
+		for (int i = 0; i < n; i++) {
+			double sigma = i % 2 == 0 ? 1 : 10;
+			double x = random.nextDouble() * 20 - 10;
+			weights[i] = 1 / (sigma * sigma);
+			data.add(x, 2 * x + 1 + sigma * random.nextGaussian(), weights[i]);
+		}
+
+		DesignMatrixBuilder design = new DesignMatrixBuilder(1);
+		RobustRegression robust = new RobustRegression(design, loss).tolerance(1E-12).maxIterations(200);
+		double[] fit = robust.fit(data).clone();
+		Checks.assertTrue(loss + " converges with weights", robust.isConverged());
+		Checks.assertClose(loss + " scale of the standardized residuals", 1, robust.scale(), 0.15);
+
+		double quiet = 0;
+		double noisy = 0;
+		for (int i = 0; i < n; i++) {
+			if (i % 2 == 0) {
+				quiet += robust.weight(i);
+			} else {
+				noisy += robust.weight(i);
+			}
+		}
+		Checks.assertClose(loss + " noisy points weighted like quiet ones", quiet, noisy, 0.05);
+
+		double[] weighted = Checks.directFit(design, data.xs(), data.ys(), weights);
+		Checks.assertClose(loss + " agrees with weighted least squares", weighted, fit, 0.02);
+	}
+}
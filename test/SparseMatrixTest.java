@@ -0,0 +1,130 @@
+import java.util.Random;
+
+/**
+ * Checks the CSR builders, duplicate merging, transpose and products of
+ * SparseMatrix against dense copies, and that malformed input is rejected
+ * when the matrix is built
+ */
+public class SparseMatrixTest {
+
+	public static void main(String[] args) {
+		builderMergesRepeats();
+		tripletsMergeAndCompact();
+		productsAndTranspose();
+		rejectsBadIndices();
+		System.out.println("SparseMatrixTest passed");
+	}
+
+	/**
+	 * Entries out of order and repeated within a row come out sorted and
+	 * summed
+	 */
+	private static void builderMergesRepeats() {
+		SparseMatrix a = new SparseMatrix.Builder(4).add(3, 1).add(1, 2).add(3, 4).add(1, -2).endRow().add(0, 5)
+				.endRow().build();
+		Checks.assertTrue("rows", a.rows() == 2);
+		Checks.assertTrue("repeats stored once, nonzeros " + a.nonZeros(), a.nonZeros() == 3);
+		Checks.assertClose("summed repeat", 5, a.get(0, 3), 0);
+		Checks.assertClose("repeats cancelling to zero", 0, a.get(0, 1), 0);
+		Checks.assertClose("second row", 5, a.get(1, 0), 0);
+	}
+
+	/**
+	 * Repeated triplets are summed, and the merged rows are packed so later
+	 * rows are still found
+	 */
+	private static void tripletsMergeAndCompact() {
+		int[] rows = { 2, 0, 2, 1, 0, 2, 1 };
+		int[] columns = { 1, 2, 1, 0, 2, 1, 3 };
+		double[] values = { 1, 2, 3, 4, 5, 6, 7 };
+		SparseMatrix a = SparseMatrix.fromTriplets(3, 4, rows, columns, values, values.length);
+		Checks.assertTrue("repeats stored once, nonzeros " + a.nonZeros(), a.nonZeros() == 4);
+		Checks.assertClose("(0, 2)", 7, a.get(0, 2), 0);
+		Checks.assertClose("(1, 0)", 4, a.get(1, 0), 0);
+		Checks.assertClose("(1, 3)", 7, a.get(1, 3), 0);
+		Checks.assertClose("(2, 1)", 10, a.get(2, 1), 0);
+		Checks.assertClose("absent entry", 0, a.get(2, 3), 0);
+
+		// only the first count triplets are read
+		SparseMatrix first = SparseMatrix.fromTriplets(3, 4, rows, columns, values, 3);
+		Checks.assertClose("counted prefix", 4, first.get(2, 1), 0);
+		Checks.assertClose("uncounted triplet", 0, first.get(1, 0), 0);
+	}
+
+	/**
+	 * Products with vectors and matrices, and the transpose, agree with the
+	 * dense matrix
+	 */
+	private static void productsAndTranspose() {
+		Random random = new Random(23);
+		int m = 30;
+		int n = 7;
+		SparseMatrix.Builder builder = new SparseMatrix.Builder(n);
+		for (int i = 0; i < m; i++) {
+			for (int j = 0; j < n; j++) {
+				if (random.nextInt(3) == 0) {
+					builder.add(j, random.nextGaussian());
+				}
+			}
+			builder.endRow();
+		}
+		SparseMatrix a = builder.build();
+		Matrix dense = a.toMatrix();
+		Matrix x = new Matrix(n, 2);
+		Matrix y = new Matrix(m, 2);
+		for (int i = 0; i < n; i++) {
+			x.set(random.nextGaussian(), i, 0);
+			x.set(random.nextGaussian(), i, 1);
+		}
+		for (int i = 0; i < m; i++) {
+			y.set(random.nextGaussian(), i, 0);
+			y.set(random.nextGaussian(), i, 1);
+		}
+		assertEqual("A x", dense.multiply(x), a.multiply(x));
+		assertEqual("A^T y", dense.transpose().multiply(y), a.transposeMultiply(y));
+
+		SparseMatrix t = a.transpose();
+		Checks.assertTrue("transpose shape", t.rows() == n && t.columns() == m);
+		assertEqual("transpose", dense.transpose(), t.toMatrix());
+		assertEqual("transpose twice", dense, t.transpose().toMatrix());
+		assertEqual("SparseMatrix.of", dense, SparseMatrix.of(dense).toMatrix());
+	}
+
+	/**
+	 * Out-of-range indices and unsorted rows fail at construction, not deep
+	 * inside a product
+	 */
+	private static void rejectsBadIndices() {
+		expectRejected("triplet row", () -> SparseMatrix.fromTriplets(2, 2, new int[] { 2 }, new int[] { 0 },
+				new double[] { 1 }, 1));
+		expectRejected("triplet column", () -> SparseMatrix.fromTriplets(2, 2, new int[] { 0 }, new int[] { -1 },
+				new double[] { 1 }, 1));
+		expectRejected("triplet count", () -> SparseMatrix.fromTriplets(2, 2, new int[] { 0 }, new int[] { 0 },
+				new double[] { 1 }, 2));
+		expectRejected("CSR column", () -> new SparseMatrix(1, 2, new int[] { 0, 1 }, new int[] { 2 },
+				new double[] { 1 }));
+		expectRejected("CSR unsorted", () -> new SparseMatrix(1, 3, new int[] { 0, 2 }, new int[] { 2, 1 },
+				new double[] { 1, 1 }));
+		expectRejected("CSR row starts", () -> new SparseMatrix(2, 2, new int[] { 0, 1, 0 }, new int[] { 0 },
+				new double[] { 1 }));
+		expectRejected("builder column", () -> new SparseMatrix.Builder(2).add(2, 1));
+	}
+
+	private static void expectRejected(String what, Runnable build) {
+		try {
+			build.run();
+		} catch (IllegalArgumentException e) {
+			return;
+		}
+		throw new AssertionError(what + " was accepted");
+	}
+
+	private static void assertEqual(String what, Matrix expected, Matrix actual) {
+		Checks.assertTrue(what + " shape", expected.rows() == actual.rows() && expected.columns() == actual.columns());
+		for (int i = 0; i < expected.rows(); i++) {
+			for (int j = 0; j < expected.columns(); j++) {
+				Checks.assertClose(what + " (" + i + ", " + j + ")", expected.get(i, j), actual.get(i, j), 1E-12);
+			}
+		}
+	}
+}